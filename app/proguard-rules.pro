@@ -18,4 +18,8 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+# JNI_OnLoad busca esta clase por nombre para registrar los métodos nativos
+-keep class com.example.cipherlock.UsbNative {
+    native <methods>;
+}
@@ -9,9 +9,11 @@
 #define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
 #define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
 
+// Clase Java que expone los métodos nativos (ver UsbNative.java)
+#define GATEWAY_CLASS "com/example/cipherlock/UsbNative"
+
 // Esta función bloquea la transferencia de datos por USB
-JNIEXPORT jboolean JNICALL
-Java_com_example_usbauth_MainActivity_blockUsbDataTransfer(JNIEnv *env, jobject thiz) {
+static jboolean blockUsbDataTransfer(JNIEnv *env, jclass clazz) {
     LOGD("Intentando bloquear transferencia de datos USB");
 
     // Aquí es donde implementaríamos el código C para bloquear la transferencia
@@ -38,8 +40,7 @@ Java_com_example_usbauth_MainActivity_blockUsbDataTransfer(JNIEnv *env, jobject
 }
 
 // Esta función permite la transferencia de datos por USB
-JNIEXPORT jboolean JNICALL
-Java_com_example_usbauth_MainActivity_allowUsbDataTransfer(JNIEnv *env, jobject thiz) {
+static jboolean allowUsbDataTransfer(JNIEnv *env, jclass clazz) {
     LOGD("Intentando permitir transferencia de datos USB");
 
     // Aquí implementaríamos el código para permitir la transferencia
@@ -55,13 +56,75 @@ Java_com_example_usbauth_MainActivity_allowUsbDataTransfer(JNIEnv *env, jobject
     }
 }
 
-// Mismo método para PasswordDialogActivity
-JNIEXPORT jboolean JNICALL
-Java_com_example_usbauth_PasswordDialogActivity_blockUsbDataTransfer(JNIEnv *env, jobject thiz) {
-    return Java_com_example_usbauth_MainActivity_blockUsbDataTransfer(env, thiz);
+// Aplica un lote de cambios: handles son huellas de dispositivo, allow indica el estado deseado
+static jboolean applyUsbDataTransfer(JNIEnv *env, jclass clazz,
+                                     jlongArray handles, jbooleanArray allow, jint count) {
+    if (count <= 0) {
+        return JNI_TRUE;
+    }
+    if ((*env)->GetArrayLength(env, handles) < count || (*env)->GetArrayLength(env, allow) < count) {
+        LOGE("Lote de transferencia USB inconsistente");
+        return JNI_FALSE;
+    }
+
+    jlong *deviceHandles = (*env)->GetLongArrayElements(env, handles, NULL);
+    jboolean *allowFlags = (*env)->GetBooleanArrayElements(env, allow, NULL);
+    if (deviceHandles == NULL || allowFlags == NULL) {
+        if (deviceHandles != NULL) {
+            (*env)->ReleaseLongArrayElements(env, handles, deviceHandles, JNI_ABORT);
+        }
+        return JNI_FALSE;
+    }
+
+    int allowed = 0;
+    for (jint i = 0; i < count; i++) {
+        // Aquí se aplicaría el cambio de cada dispositivo; como en las funciones anteriores,
+        // en un dispositivo real requiere permisos de sistema o root
+        if (allowFlags[i]) {
+            allowed++;
+        }
+    }
+    int success = 1; // simulamos éxito
+
+    (*env)->ReleaseBooleanArrayElements(env, allow, allowFlags, JNI_ABORT);
+    (*env)->ReleaseLongArrayElements(env, handles, deviceHandles, JNI_ABORT);
+
+    if (success) {
+        LOGD("Lote aplicado: %d permitido(s), %d bloqueado(s)", allowed, count - allowed);
+        return JNI_TRUE;
+    } else {
+        LOGE("Error al aplicar lote de transferencia USB");
+        return JNI_FALSE;
+    }
 }
 
-JNIEXPORT jboolean JNICALL
-Java_com_example_usbauth_PasswordDialogActivity_allowUsbDataTransfer(JNIEnv *env, jobject thiz) {
-    return Java_com_example_usbauth_MainActivity_allowUsbDataTransfer(env, thiz);
-}
\ No newline at end of file
+static const JNINativeMethod gatewayMethods[] = {
+        {"nativeBlockUsbDataTransfer", "()Z", (void *) blockUsbDataTransfer},
+        {"nativeAllowUsbDataTransfer", "()Z", (void *) allowUsbDataTransfer},
+        {"nativeApplyUsbDataTransfer", "([J[ZI)Z", (void *) applyUsbDataTransfer},
+};
+
+// Registra los métodos una sola vez al cargar la biblioteca, sin depender del nombre de los símbolos
+JNIEXPORT jint JNICALL
+JNI_OnLoad(JavaVM *vm, void *reserved) {
+    JNIEnv *env;
+    if ((*vm)->GetEnv(vm, (void **) &env, JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
+
+    jclass gateway = (*env)->FindClass(env, GATEWAY_CLASS);
+    if (gateway == NULL) {
+        LOGE("No se encontró la clase %s", GATEWAY_CLASS);
+        return JNI_ERR;
+    }
+
+    jint count = sizeof(gatewayMethods) / sizeof(gatewayMethods[0]);
+    if ((*env)->RegisterNatives(env, gateway, gatewayMethods, count) != JNI_OK) {
+        LOGE("Error al registrar métodos nativos");
+        (*env)->DeleteLocalRef(env, gateway);
+        return JNI_ERR;
+    }
+
+    (*env)->DeleteLocalRef(env, gateway);
+    return JNI_VERSION_1_6;
+}
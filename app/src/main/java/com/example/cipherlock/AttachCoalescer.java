@@ -0,0 +1,90 @@
+package com.example.cipherlock;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Agrupa las conexiones de dispositivos no autorizados que llegan dentro de una ventana
+ * corta (por ejemplo, un hub con varios dispositivos) en una única sesión de autenticación:
+ * un solo diálogo, un solo bloqueo nativo y una sola comprobación de contraseña.
+ */
+public class AttachCoalescer {
+    private static final String TAG = "AttachCoalescer";
+    static final String WINDOW_KEY = "attach_coalesce_window_ms";
+    static final long DEFAULT_WINDOW_MS = 500;
+
+    static final String EXTRA_DEVICE_IDS = "device_ids";
+    static final String EXTRA_DEVICE_NAMES = "device_names";
+    static final String EXTRA_ATTACH_NANOS = "attach_nanos";
+    static final String EXTRA_LAUNCH_NANOS = "launch_nanos";
+
+    private static AttachCoalescer instance;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // ID -> nombre, sin duplicados y en orden de llegada
+    private final Map<String, String> pendingDevices = new LinkedHashMap<>();
+    private Context appContext;
+    // Llegada del primer dispositivo de la ventana, para medir la latencia hasta el diálogo
+    private long firstAttachNanos;
+
+    private final Runnable flushRunnable = this::flush;
+
+    public static synchronized AttachCoalescer getInstance() {
+        if (instance == null) {
+            instance = new AttachCoalescer();
+        }
+        return instance;
+    }
+
+    /**
+     * Añade un dispositivo a la sesión pendiente. El primero de la ventana programa el diálogo.
+     */
+    public synchronized void enqueue(Context context, String deviceId, String deviceName, long attachNanos) {
+        appContext = context.getApplicationContext();
+        boolean firstInWindow = pendingDevices.isEmpty();
+        pendingDevices.put(deviceId, deviceName);
+
+        if (firstInWindow) {
+            firstAttachNanos = attachNanos;
+            long windowMs = PolicyStore.get(context).getCoalesceWindowMillis();
+            handler.postDelayed(flushRunnable, Math.max(0, windowMs));
+        }
+    }
+
+    /**
+     * Lanza un único diálogo con todos los dispositivos acumulados en la ventana
+     */
+    private void flush() {
+        ArrayList<String> ids;
+        ArrayList<String> names;
+        Context context;
+        long attachNanos;
+        synchronized (this) {
+            if (pendingDevices.isEmpty()) {
+                return;
+            }
+            ids = new ArrayList<>(pendingDevices.keySet());
+            names = new ArrayList<>(pendingDevices.values());
+            pendingDevices.clear();
+            context = appContext;
+            attachNanos = firstAttachNanos;
+        }
+
+        Log.d(TAG, "Sesión de autenticación con " + ids.size() + " dispositivo(s)");
+
+        // Si ya hay un diálogo visible recibe los dispositivos en onNewIntent
+        Intent dialogIntent = new Intent(context, PasswordDialogActivity.class);
+        dialogIntent.putExtra(EXTRA_DEVICE_IDS, ids.toArray(new String[0]));
+        dialogIntent.putExtra(EXTRA_DEVICE_NAMES, names.toArray(new String[0]));
+        dialogIntent.putExtra(EXTRA_ATTACH_NANOS, attachNanos);
+        dialogIntent.putExtra(EXTRA_LAUNCH_NANOS, AttachMetrics.start());
+        dialogIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        context.startActivity(dialogIntent);
+    }
+}
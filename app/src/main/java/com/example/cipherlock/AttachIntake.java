@@ -0,0 +1,108 @@
+package com.example.cipherlock;
+
+import java.util.ArrayDeque;
+
+/**
+ * Entrada única de eventos de conexión: descarta las entregas repetidas de una misma conexión.
+ *
+ * USBReceiver puede estar registrado a la vez en el manifiesto, en UsbAuthService y en
+ * MainActivity, así que un mismo ACTION_USB_DEVICE_ATTACHED llega hasta tres veces. Una
+ * conexión física se identifica por vendorId/productId y su secuencia de conexión
+ * (UsbDevice.getDeviceId(), nueva en cada conexión). Se recuerdan las vistas durante
+ * WINDOW_MILLIS en una tabla acotada; solo la primera entrega pasa.
+ */
+public class AttachIntake {
+    static final long WINDOW_MILLIS = 10000;
+    static final int CAPACITY = 64;
+
+    private static final class Entry {
+        final int vendorId;
+        final int productId;
+        final int attachSequence;
+        final long seenMillis;
+
+        Entry(int vendorId, int productId, int attachSequence, long seenMillis) {
+            this.vendorId = vendorId;
+            this.productId = productId;
+            this.attachSequence = attachSequence;
+            this.seenMillis = seenMillis;
+        }
+    }
+
+    private final long windowMillis;
+    private final int capacity;
+    private final LongHashMap<Entry> seen;
+    // Orden de llegada, para caducar y expulsar las más antiguas
+    private final ArrayDeque<Entry> order;
+
+    private long accepted;
+    private long duplicates;
+
+    public AttachIntake() {
+        this(WINDOW_MILLIS, CAPACITY);
+    }
+
+    public AttachIntake(long windowMillis, int capacity) {
+        this.windowMillis = windowMillis;
+        this.capacity = capacity;
+        seen = new LongHashMap<>(capacity);
+        order = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Devuelve true solo para la primera entrega de esta conexión
+     */
+    public boolean accept(int vendorId, int productId, int attachSequence) {
+        return accept(vendorId, productId, attachSequence, System.nanoTime() / 1000000);
+    }
+
+    public synchronized boolean accept(int vendorId, int productId, int attachSequence, long nowMillis) {
+        expire(nowMillis);
+
+        long key = key(vendorId, productId, attachSequence);
+        if (seen.containsKey(key)) {
+            duplicates++;
+            return false;
+        }
+
+        if (order.size() >= capacity) {
+            // Tabla llena: se olvida la conexión más antigua
+            forget(order.pollFirst());
+        }
+        Entry entry = new Entry(vendorId, productId, attachSequence, nowMillis);
+        seen.put(key, entry);
+        order.addLast(entry);
+        accepted++;
+        return true;
+    }
+
+    public synchronized long getAcceptedCount() {
+        return accepted;
+    }
+
+    public synchronized long getDuplicateCount() {
+        return duplicates;
+    }
+
+    public synchronized String getMetrics() {
+        return "aceptados=" + accepted + " duplicados=" + duplicates + " en tabla=" + order.size();
+    }
+
+    private void expire(long nowMillis) {
+        Entry oldest;
+        while ((oldest = order.peekFirst()) != null && nowMillis - oldest.seenMillis >= windowMillis) {
+            forget(order.pollFirst());
+        }
+    }
+
+    private void forget(Entry entry) {
+        seen.remove(key(entry.vendorId, entry.productId, entry.attachSequence));
+    }
+
+    /**
+     * Clave exacta de 64 bits: vendorId y productId (16 bits cada uno) y la secuencia
+     */
+    private static long key(int vendorId, int productId, int attachSequence) {
+        return ((long) ((vendorId << 16) | (productId & 0xFFFF)) << 32) | (attachSequence & 0xFFFFFFFFL);
+    }
+}
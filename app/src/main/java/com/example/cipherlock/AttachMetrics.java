@@ -0,0 +1,88 @@
+package com.example.cipherlock;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Latencias de cada etapa entre la llegada de ACTION_USB_DEVICE_ATTACHED y la decisión.
+ * Los tiempos se toman con System.nanoTime() y se registran en histogramas de cubetas fijas.
+ *
+ * Se exportan con el volcado del servicio:
+ * adb shell dumpsys activity service com.example.cipherlock/.UsbAuthService
+ */
+public final class AttachMetrics {
+    public enum Stage {
+        PREFS_READ,
+        WHITELIST_PARSE,
+        LOOKUP,
+        NATIVE_CALL,
+        ACTIVITY_LAUNCH,
+        ATTACH_TO_DECISION,
+        ATTACH_TO_DIALOG,
+        PASSWORD_VERIFY,
+        PREWARM,
+        FIRST_DECISION_COLD,
+        FIRST_DECISION_WARM
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[STAGES.length];
+    // La primera decisión del proceso solo ocurre una vez; reset() no la rearma
+    private static final AtomicBoolean firstDecisionRecorded = new AtomicBoolean();
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new LatencyHistogram();
+        }
+    }
+
+    private AttachMetrics() {
+    }
+
+    /**
+     * Marca de tiempo para pasar después a record()
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Registra el tiempo transcurrido desde startNanos en la etapa indicada
+     */
+    public static void record(Stage stage, long startNanos) {
+        HISTOGRAMS[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Registra la primera decisión del proceso en FIRST_DECISION_WARM si la ruta se
+     * precalentó al arrancar, o en FIRST_DECISION_COLD si no. Las siguientes se ignoran.
+     */
+    public static void recordFirstDecision(long startNanos, boolean prewarmed) {
+        if (firstDecisionRecorded.compareAndSet(false, true)) {
+            record(prewarmed ? Stage.FIRST_DECISION_WARM : Stage.FIRST_DECISION_COLD, startNanos);
+        }
+    }
+
+    public static LatencyHistogram get(Stage stage) {
+        return HISTOGRAMS[stage.ordinal()];
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Escribe una línea por etapa con p50, p99 y máximo
+     */
+    public static void dump(PrintWriter writer) {
+        writer.println("Latencias de conexión USB:");
+        for (Stage stage : STAGES) {
+            writer.print("  ");
+            writer.print(stage.name());
+            writer.print(": ");
+            writer.println(HISTOGRAMS[stage.ordinal()].summary());
+        }
+    }
+}
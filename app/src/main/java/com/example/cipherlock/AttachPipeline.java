@@ -0,0 +1,91 @@
+package com.example.cipherlock;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.hardware.usb.UsbDevice;
+import android.util.Log;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ejecuta la decisión de cada conexión USB fuera del hilo principal.
+ *
+ * Los eventos se reparten entre varios hilos de un solo trabajador según vendorId/productId,
+ * de modo que los eventos de un mismo dispositivo se procesan siempre en orden de llegada.
+ * Cada cola está acotada: si se llena, el evento no espera y se trata como desconocido
+ * (bloquear y pedir contraseña), que es la opción segura.
+ */
+public class AttachPipeline {
+    private static final String TAG = "AttachPipeline";
+    private static final int STRIPES = 2;
+    private static final int QUEUE_CAPACITY = 16;
+
+    private static AttachPipeline instance;
+
+    private final ThreadPoolExecutor[] stripes = new ThreadPoolExecutor[STRIPES];
+
+    private AttachPipeline() {
+        for (int i = 0; i < STRIPES; i++) {
+            final String name = "usb-attach-" + i;
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    public static synchronized AttachPipeline getInstance() {
+        if (instance == null) {
+            instance = new AttachPipeline();
+        }
+        return instance;
+    }
+
+    /**
+     * Encola la decisión de un dispositivo conectado. pendingResult se completa al terminar.
+     * attachNanos es el instante de llegada del broadcast (AttachMetrics.start()).
+     */
+    public void submit(Context context, UsbDevice device, BroadcastReceiver.PendingResult pendingResult,
+                       long attachNanos) {
+        Context appContext = context.getApplicationContext();
+        Runnable task = () -> {
+            try {
+                USBReceiver.handleAttach(appContext, device, attachNanos);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error al evaluar dispositivo conectado", e);
+            } finally {
+                finish(pendingResult);
+            }
+        };
+
+        try {
+            stripeFor(device).execute(task);
+        } catch (RejectedExecutionException e) {
+            // Contrapresión: sin consultar la lista blanca, pedir contraseña directamente
+            Log.w(TAG, "Cola de eventos USB llena, se solicita autenticación sin consulta");
+            try {
+                USBReceiver.promptForDevice(appContext, device, attachNanos);
+            } finally {
+                finish(pendingResult);
+            }
+        }
+    }
+
+    private ThreadPoolExecutor stripeFor(UsbDevice device) {
+        // Mismo dispositivo -> mismos vendorId/productId -> mismo hilo
+        int key = device.getVendorId() * 31 + device.getProductId();
+        return stripes[(key & Integer.MAX_VALUE) % STRIPES];
+    }
+
+    private static void finish(BroadcastReceiver.PendingResult pendingResult) {
+        if (pendingResult != null) {
+            pendingResult.finish();
+        }
+    }
+}
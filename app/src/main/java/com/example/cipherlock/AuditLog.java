@@ -0,0 +1,334 @@
+package com.example.cipherlock;
+
+import android.content.Context;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registro de auditoría de las decisiones de autorización USB.
+ *
+ * record() nunca bloquea: reserva un hueco de un anillo preasignado con un CAS y publica
+ * el evento. Si el anillo está lleno, el evento se descarta y se cuenta. Un único hilo
+ * escritor vacía el anillo por lotes en ficheros de texto (una línea por evento) que
+ * rotan al superar un tamaño máximo.
+ */
+public class AuditLog {
+    public enum Event {
+        ATTACH,
+        WHITELIST_HIT,
+        SESSION_GRANT,
+        RULE_ALLOW,
+        RULE_DENY,
+        PROMPT,
+        PASSWORD_SUCCESS,
+        PASSWORD_FAILURE,
+        TIMEOUT,
+        CANCEL,
+        // Añadidos al final: el anillo en memoria guarda el ordinal (el fichero, el nombre)
+        WHITELIST_EVICT,
+        // Claves o log cifrado ilegibles: se bloquea todo sin modificar los ficheros
+        WHITELIST_LOCKED
+    }
+
+    /**
+     * Evento leído del registro
+     */
+    public static class Record {
+        private final long timestamp;
+        private final Event event;
+        private final String deviceId;
+
+        Record(long timestamp, Event event, String deviceId) {
+            this.timestamp = timestamp;
+            this.event = event;
+            this.deviceId = deviceId;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public Event getEvent() {
+            return event;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+    }
+
+    private static final String AUDIT_DIR = "audit";
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final long DEFAULT_MAX_FILE_BYTES = 256 * 1024;
+    private static final int DEFAULT_MAX_FILES = 4;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final Event[] EVENTS = Event.values();
+
+    private static AuditLog instance;
+
+    private final File directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    // Anillo: cada hueco guarda el evento en arrays paralelos de primitivos
+    private final int mask;
+    private final long[] timestamps;
+    private final int[] events;
+    private final int[] vendorIds;
+    private final int[] productIds;
+    private final String[] texts;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long consumed;
+
+    private final Object fileLock = new Object();
+    private final Thread writerThread;
+    private Writer writer;
+    private long currentFileBytes;
+
+    public AuditLog(File directory, int capacity, long maxFileBytes, int maxFiles) {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        timestamps = new long[size];
+        events = new int[size];
+        vendorIds = new int[size];
+        productIds = new int[size];
+        texts = new String[size];
+        published = new AtomicLongArray(size);
+
+        writerThread = new Thread(this::runWriter, "audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public static synchronized AuditLog getInstance(Context context) {
+        if (instance == null) {
+            instance = new AuditLog(new File(context.getApplicationContext().getFilesDir(), AUDIT_DIR),
+                    DEFAULT_CAPACITY, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILES);
+        }
+        return instance;
+    }
+
+    /**
+     * Registra un evento con el ID de texto del dispositivo
+     */
+    public boolean record(Event event, String deviceId) {
+        return record(event, -1, -1, deviceId);
+    }
+
+    /**
+     * Registra un evento desde los campos del descriptor; el ID se formatea en el escritor
+     */
+    public boolean record(Event event, int vendorId, int productId, String serial) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed > mask) {
+                // Anillo lleno: nunca se bloquea al llamante
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        timestamps[slot] = System.currentTimeMillis();
+        events[slot] = event.ordinal();
+        vendorIds[slot] = vendorId;
+        productIds[slot] = productId;
+        texts[slot] = serial;
+        published.set(slot, sequence + 1);
+
+        // Despertar al escritor antes de tiempo si el anillo va por la mitad
+        if (sequence - consumed == (mask + 1) / 2) {
+            LockSupport.unpark(writerThread);
+        }
+        return true;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Busca eventos en [fromMillis, toMillis]. deviceId null devuelve todos los dispositivos.
+     * Vuelca antes lo pendiente del anillo para que la consulta lo incluya.
+     */
+    public List<Record> query(long fromMillis, long toMillis, String deviceId) throws IOException {
+        List<Record> results = new ArrayList<>();
+        synchronized (fileLock) {
+            drain();
+
+            // Del más antiguo al más reciente
+            for (int index = maxFiles - 1; index >= 0; index--) {
+                File file = fileFor(index);
+                // La fecha de modificación es posterior al último evento del fichero
+                if (!file.exists() || file.lastModified() < fromMillis) {
+                    continue;
+                }
+                readFile(file, fromMillis, toMillis, deviceId, results);
+            }
+        }
+        return results;
+    }
+
+    private void runWriter() {
+        while (true) {
+            LockSupport.parkNanos(FLUSH_INTERVAL_NANOS);
+            synchronized (fileLock) {
+                try {
+                    drain();
+                } catch (IOException e) {
+                    // Se reintenta en el siguiente ciclo; los eventos siguen en el anillo
+                    closeWriter();
+                }
+            }
+        }
+    }
+
+    /**
+     * Vacía el anillo en el fichero actual. Solo se llama con fileLock.
+     */
+    private void drain() throws IOException {
+        long next = consumed;
+        if (published.get((int) next & mask) != next + 1) {
+            return;
+        }
+
+        Writer out = openWriter();
+        StringBuilder line = new StringBuilder(64);
+        while (published.get((int) next & mask) == next + 1) {
+            int slot = (int) next & mask;
+            line.setLength(0);
+            line.append(timestamps[slot]).append('\t').append(EVENTS[events[slot]].name()).append('\t');
+            if (vendorIds[slot] >= 0) {
+                // La serie la elige el dispositivo: sin escapar podría partir la línea
+                appendEscaped(line, DeviceFingerprint.toDeviceId(vendorIds[slot], productIds[slot], texts[slot]));
+            } else if (texts[slot] != null) {
+                appendEscaped(line, texts[slot]);
+            }
+            line.append('\n');
+            texts[slot] = null;
+
+            // Liberar el hueco para los productores
+            next++;
+            consumed = next;
+
+            out.write(line.toString());
+            currentFileBytes += line.length();
+            if (currentFileBytes >= maxFileBytes) {
+                rotate();
+                out = openWriter();
+            }
+        }
+        out.flush();
+    }
+
+    private Writer openWriter() throws IOException {
+        if (writer == null) {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("No se pudo crear " + directory);
+            }
+            File current = fileFor(0);
+            currentFileBytes = current.length();
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(current, true), StandardCharsets.UTF_8));
+        }
+        return writer;
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+                // Nada más que hacer
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * audit-0.log pasa a audit-1.log y así sucesivamente; el más antiguo se elimina
+     */
+    private void rotate() throws IOException {
+        closeWriter();
+        File oldest = fileFor(maxFiles - 1);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("No se pudo eliminar " + oldest);
+        }
+        for (int index = maxFiles - 2; index >= 0; index--) {
+            File file = fileFor(index);
+            if (file.exists() && !file.renameTo(fileFor(index + 1))) {
+                throw new IOException("No se pudo rotar " + file);
+            }
+        }
+        currentFileBytes = 0;
+    }
+
+    private File fileFor(int index) {
+        return new File(directory, "audit-" + index + ".log");
+    }
+
+    private static void readFile(File file, long fromMillis, long toMillis, String deviceId,
+                                 List<Record> results) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int firstTab = line.indexOf('\t');
+                int secondTab = firstTab < 0 ? -1 : line.indexOf('\t', firstTab + 1);
+                if (secondTab < 0) {
+                    continue;
+                }
+
+                long timestamp;
+                try {
+                    timestamp = Long.parseLong(line.substring(0, firstTab));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (timestamp < fromMillis || timestamp > toMillis) {
+                    continue;
+                }
+
+                String id = line.substring(secondTab + 1);
+                if (deviceId != null && !deviceId.equals(id)) {
+                    continue;
+                }
+
+                try {
+                    Event event = Event.valueOf(line.substring(firstTab + 1, secondTab));
+                    results.add(new Record(timestamp, event, id));
+                } catch (IllegalArgumentException e) {
+                    // Línea de un tipo de evento desconocido
+                }
+            }
+        }
+    }
+
+    private static void appendEscaped(StringBuilder line, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            line.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+        }
+    }
+}
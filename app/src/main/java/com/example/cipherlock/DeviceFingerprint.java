@@ -0,0 +1,133 @@
+package com.example.cipherlock;
+
+/**
+ * Huella de 64 bits de un dispositivo USB.
+ *
+ * Es el hash FNV-1a de los caracteres del ID "vendorId:productId:serial", pero se puede
+ * calcular directamente desde los campos del descriptor sin construir la cadena, por lo que
+ * es compatible con los IDs de texto ya guardados y no asigna memoria en cada conexión.
+ * Al no ser un hash criptográfico, una coincidencia se confirma siempre con matches().
+ */
+public final class DeviceFingerprint {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private DeviceFingerprint() {
+    }
+
+    /**
+     * Huella de un ID de texto ya existente
+     */
+    public static long of(String deviceId) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < deviceId.length(); i++) {
+            hash = mix(hash, deviceId.charAt(i));
+        }
+        return hash;
+    }
+
+    /**
+     * Huella calculada desde los campos del descriptor; igual a of(generateDeviceId(...))
+     */
+    public static long of(int vendorId, int productId, String serial) {
+        long hash = mixNumber(FNV_OFFSET, vendorId);
+        hash = mix(hash, ':');
+        hash = mixNumber(hash, productId);
+        hash = mix(hash, ':');
+        if (serial != null) {
+            for (int i = 0; i < serial.length(); i++) {
+                hash = mix(hash, serial.charAt(i));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Construye el ID de texto "vendorId:productId:serial" (serial vacío si no hay)
+     */
+    public static String toDeviceId(int vendorId, int productId, String serial) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(vendorId)
+                .append(":")
+                .append(productId)
+                .append(":");
+        if (serial != null) {
+            builder.append(serial);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Compara un ID de texto con los campos del descriptor sin construir la cadena
+     */
+    public static boolean matches(String deviceId, int vendorId, int productId, String serial) {
+        int position = matchNumber(deviceId, 0, vendorId);
+        if (position < 0 || position >= deviceId.length() || deviceId.charAt(position) != ':') {
+            return false;
+        }
+        position = matchNumber(deviceId, position + 1, productId);
+        if (position < 0 || position >= deviceId.length() || deviceId.charAt(position) != ':') {
+            return false;
+        }
+        position++;
+
+        int serialLength = serial != null ? serial.length() : 0;
+        if (deviceId.length() - position != serialLength) {
+            return false;
+        }
+        return serialLength == 0 || deviceId.regionMatches(position, serial, 0, serialLength);
+    }
+
+    private static long mix(long hash, char c) {
+        return (hash ^ c) * FNV_PRIME;
+    }
+
+    /**
+     * Mezcla los dígitos decimales de value tal como los escribiría StringBuilder.append(int)
+     */
+    private static long mixNumber(long hash, int value) {
+        long remaining = value;
+        if (remaining < 0) {
+            hash = mix(hash, '-');
+            remaining = -remaining;
+        }
+        long divisor = 1;
+        while (divisor * 10 <= remaining) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            hash = mix(hash, (char) ('0' + (remaining / divisor) % 10));
+            divisor /= 10;
+        }
+        return hash;
+    }
+
+    /**
+     * Comprueba que en deviceId, a partir de start, aparecen los dígitos de value.
+     * Devuelve la posición siguiente o -1 si no coinciden.
+     */
+    private static int matchNumber(String deviceId, int start, int value) {
+        int position = start;
+        long remaining = value;
+        if (remaining < 0) {
+            if (position >= deviceId.length() || deviceId.charAt(position) != '-') {
+                return -1;
+            }
+            position++;
+            remaining = -remaining;
+        }
+        long divisor = 1;
+        while (divisor * 10 <= remaining) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            char expected = (char) ('0' + (remaining / divisor) % 10);
+            if (position >= deviceId.length() || deviceId.charAt(position) != expected) {
+                return -1;
+            }
+            position++;
+            divisor /= 10;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.cipherlock;
+
+import android.util.Log;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Estado de bloqueo de cada dispositivo conectado, identificado por su huella de 64 bits.
+ *
+ * UNKNOWN -> BLOCKED -> PENDING -> ALLOWED. Las transiciones que no cambian el estado físico
+ * (bloquear un dispositivo ya bloqueado, cancelar un diálogo pendiente, etc.) se descartan
+ * sin cruzar JNI. Los cambios reales se acumulan y un único hilo los aplica con una sola
+ * llamada nativa por lote: mientras se aplica un lote, los cambios nuevos esperan al siguiente.
+ */
+public class EnforcementController {
+    private static final String TAG = "EnforcementController";
+    private static final int INITIAL_BATCH_CAPACITY = 8;
+
+    public enum State { UNKNOWN, BLOCKED, PENDING, ALLOWED }
+
+    private static EnforcementController instance;
+
+    private final LongHashMap<State> states = new LongHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "usb-enforcement");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Lote pendiente de aplicar: huella y estado físico deseado, sin duplicados
+    private final LongHashMap<Integer> queuedIndex = new LongHashMap<>();
+    private long[] queuedHandles = new long[INITIAL_BATCH_CAPACITY];
+    private boolean[] queuedAllow = new boolean[INITIAL_BATCH_CAPACITY];
+    private int queuedCount;
+    private boolean flushScheduled;
+
+    // Métricas
+    private long droppedTransitions;
+    private long nativeCalls;
+    private long appliedTransitions;
+
+    private final Runnable flushRunnable = this::flush;
+
+    public static synchronized EnforcementController getInstance() {
+        if (instance == null) {
+            instance = new EnforcementController();
+        }
+        return instance;
+    }
+
+    /**
+     * Nueva conexión física: el estado anterior del dispositivo deja de ser válido
+     */
+    public synchronized void onAttached(long handle) {
+        states.remove(handle);
+    }
+
+    /**
+     * Bloquea el dispositivo. Si ya está bloqueado o pendiente de contraseña no hace nada.
+     */
+    public synchronized void block(long handle) {
+        State current = getState(handle);
+        if (current == State.BLOCKED || current == State.PENDING) {
+            if (current == State.PENDING) {
+                // Diálogo cancelado o agotado: sigue bloqueado físicamente
+                states.put(handle, State.BLOCKED);
+            }
+            droppedTransitions++;
+            return;
+        }
+        states.put(handle, State.BLOCKED);
+        enqueue(handle, false);
+    }
+
+    /**
+     * Marca el dispositivo como pendiente de contraseña, bloqueándolo si aún no lo estaba
+     */
+    public synchronized void markPending(long handle) {
+        State current = getState(handle);
+        if (current == State.PENDING || current == State.BLOCKED) {
+            if (current == State.BLOCKED) {
+                states.put(handle, State.PENDING);
+            }
+            droppedTransitions++;
+            return;
+        }
+        states.put(handle, State.PENDING);
+        enqueue(handle, false);
+    }
+
+    /**
+     * Permite la transferencia. Si ya estaba permitida no hace nada.
+     */
+    public synchronized void allow(long handle) {
+        if (getState(handle) == State.ALLOWED) {
+            droppedTransitions++;
+            return;
+        }
+        states.put(handle, State.ALLOWED);
+        enqueue(handle, true);
+    }
+
+    public synchronized State getState(long handle) {
+        State state = states.get(handle);
+        return state != null ? state : State.UNKNOWN;
+    }
+
+    /**
+     * Olvida todos los estados, por ejemplo al desactivar la protección
+     */
+    public synchronized void reset() {
+        states.clear();
+    }
+
+    public synchronized String getMetrics() {
+        return "transitions applied=" + appliedTransitions + " dropped=" + droppedTransitions
+                + " native_calls=" + nativeCalls;
+    }
+
+    private void enqueue(long handle, boolean allow) {
+        Integer index = queuedIndex.get(handle);
+        if (index != null) {
+            // Un cambio posterior del mismo dispositivo sustituye al anterior en el lote
+            queuedAllow[index] = allow;
+        } else {
+            if (queuedCount == queuedHandles.length) {
+                int capacity = queuedCount * 2;
+                long[] handles = new long[capacity];
+                boolean[] allowFlags = new boolean[capacity];
+                System.arraycopy(queuedHandles, 0, handles, 0, queuedCount);
+                System.arraycopy(queuedAllow, 0, allowFlags, 0, queuedCount);
+                queuedHandles = handles;
+                queuedAllow = allowFlags;
+            }
+            queuedIndex.put(handle, queuedCount);
+            queuedHandles[queuedCount] = handle;
+            queuedAllow[queuedCount] = allow;
+            queuedCount++;
+        }
+
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.execute(flushRunnable);
+        }
+    }
+
+    /**
+     * Aplica el lote acumulado con una sola llamada nativa
+     */
+    private void flush() {
+        long[] handles;
+        boolean[] allowFlags;
+        int count;
+        synchronized (this) {
+            handles = new long[queuedCount];
+            allowFlags = new boolean[queuedCount];
+            System.arraycopy(queuedHandles, 0, handles, 0, queuedCount);
+            System.arraycopy(queuedAllow, 0, allowFlags, 0, queuedCount);
+            count = queuedCount;
+            queuedCount = 0;
+            queuedIndex.clear();
+            flushScheduled = false;
+        }
+
+        if (count == 0) {
+            return;
+        }
+
+        long nativeStart = AttachMetrics.start();
+        boolean applied = UsbNative.applyUsbDataTransfer(handles, allowFlags, count);
+        AttachMetrics.record(AttachMetrics.Stage.NATIVE_CALL, nativeStart);
+
+        synchronized (this) {
+            nativeCalls++;
+            appliedTransitions += count;
+        }
+        if (!applied) {
+            Log.e(TAG, "Error al aplicar " + count + " cambio(s) de transferencia USB");
+        }
+    }
+}
@@ -7,21 +7,19 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.hardware.usb.UsbManager;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.LinearLayout;
 import android.widget.ListView;
 import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 import android.content.SharedPreferences;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Locale;
 
 public class MainActivity extends Activity {
     private EditText passwordField;
@@ -31,20 +29,12 @@ public class MainActivity extends Activity {
     private Switch enableProtectionSwitch;
     private TextView statusText;
     private USBReceiver usbReceiver;
+    private final PolicyStore.Listener policyListener =
+            policy -> runOnUiThread(() -> updateStatusText(policy.isProtectionEnabled()));
 
     private static final String PREFS_NAME = "UsbAuthPrefs";
-    private static final String PASSWORD_KEY = "password";
     private static final String PROTECTION_ENABLED_KEY = "protection_enabled";
 
-    static {
-        // Cargar la biblioteca nativa
-        System.loadLibrary("usb_auth_native");
-    }
-
-    // Declaración de métodos nativos
-    public native boolean blockUsbDataTransfer();
-    public native boolean allowUsbDataTransfer();
-
     /**
      * Inicializa la actividad principal y sus componentes
      */
@@ -70,17 +60,19 @@ public class MainActivity extends Activity {
 
         // Cargar configuración
         SharedPreferences settings = getSharedPreferences(PREFS_NAME, 0);
-        boolean protectionEnabled = settings.getBoolean(PROTECTION_ENABLED_KEY, false);
+        boolean protectionEnabled = PolicyStore.get(this).isProtectionEnabled();
         enableProtectionSwitch.setChecked(protectionEnabled);
 
-        // Actualizar texto de estado
+        // Actualizar texto de estado, también si la política cambia desde otro componente
         updateStatusText(protectionEnabled);
+        PolicyStore.addListener(policyListener);
 
         // Configurar listeners
         enableProtectionSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
             SharedPreferences.Editor editor = settings.edit();
             editor.putBoolean(PROTECTION_ENABLED_KEY, isChecked);
             editor.apply();
+            PolicyStore.refresh(MainActivity.this);
 
             updateStatusText(isChecked);
 
@@ -110,7 +102,10 @@ public class MainActivity extends Activity {
                 }
 
                 // Permitir transferencias USB si se desactiva la protección
-                allowUsbDataTransfer();
+                EnforcementController.getInstance().reset();
+                UsbAuthService.getPendingAuthScheduler(MainActivity.this).clear();
+                SessionGrants.getInstance().revokeAll();
+                UsbNative.allowUsbDataTransfer();
             }
         });
 
@@ -164,13 +159,18 @@ public class MainActivity extends Activity {
             return;
         }
 
-        // Guardar contraseña
-        SharedPreferences settings = getSharedPreferences(PREFS_NAME, 0);
-        SharedPreferences.Editor editor = settings.edit();
-        editor.putString(PASSWORD_KEY, password);
-        editor.apply();
-
-        Toast.makeText(this, "Contraseña guardada correctamente", Toast.LENGTH_SHORT).show();
+        // Guardar el hash de la contraseña; PBKDF2 se calcula fuera del hilo principal
+        saveButton.setEnabled(false);
+        PasswordStore.saveAsync(this, password, saved -> runOnUiThread(() -> {
+            saveButton.setEnabled(true);
+            if (!saved) {
+                Toast.makeText(this, "No se pudo guardar la contraseña", Toast.LENGTH_LONG).show();
+                return;
+            }
+            // Los permisos de sesión se obtuvieron con la contraseña anterior
+            SessionGrants.getInstance().revokeAll();
+            Toast.makeText(this, "Contraseña guardada correctamente", Toast.LENGTH_SHORT).show();
+        }));
 
         // Limpiar campos
         passwordField.setText("");
@@ -178,62 +178,108 @@ public class MainActivity extends Activity {
     }
 
     /**
-     * Muestra la lista de dispositivos en lista blanca
+     * Muestra la lista de dispositivos en lista blanca, paginada y con búsqueda
      */
     private void showWhitelistedDevices() {
-        List<WhitelistedDevice> devices = USBReceiver.getWhitelistedDevices(this);
+        // La primera carga reproduce el log en disco: nunca en el hilo principal
+        USBReceiver.loadWhitelistAsync(this, snapshot -> runOnUiThread(() -> {
+            if (!isFinishing()) {
+                showWhitelistDialog(snapshot);
+            }
+        }));
+    }
 
-        if (devices.isEmpty()) {
+    private void showWhitelistDialog(WhitelistStore.Snapshot snapshot) {
+        if (snapshot.size() == 0) {
             Toast.makeText(this, "No hay dispositivos en la lista blanca", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        // Crear lista de nombres de dispositivo
-        List<String> deviceNames = new ArrayList<>();
-        SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
+        // Las filas se formatean al mostrarse, no al abrir el diálogo
+        final WhitelistAdapter adapter = new WhitelistAdapter(this, snapshot.getDevices(),
+                USBReceiver.getWhitelistUsage());
 
-        for (WhitelistedDevice device : devices) {
-            String date = dateFormat.format(new Date(device.getAddedTimestamp()));
-            deviceNames.add(device.getName() + " (añadido: " + date + ")");
-        }
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
 
-        // Crear diálogo con lista
-        AlertDialog.Builder builder = new AlertDialog.Builder(this);
-        builder.setTitle("Dispositivos en lista blanca");
+        EditText searchField = new EditText(this);
+        searchField.setHint("Buscar por nombre o fabricante (vendorId)");
+        layout.addView(searchField);
+
+        ListView listView = new ListView(this);
+        listView.setAdapter(adapter);
+        layout.addView(listView);
+
+        // Filtrar mientras se escribe
+        searchField.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
 
-        final ArrayAdapter<String> adapter = new ArrayAdapter<>(
-                this, android.R.layout.simple_list_item_1, deviceNames);
+            @Override
+            public void afterTextChanged(Editable s) {
+                adapter.setFilter(s.toString());
+            }
+        });
 
-        builder.setAdapter(adapter, null);
+        // Cargar la página siguiente al acercarse al final
+        listView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
 
-        // Añadir opción para eliminar dispositivos
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (firstVisibleItem + visibleItemCount >= totalItemCount - visibleItemCount
+                        && adapter.hasMore()) {
+                    adapter.loadNextPage();
+                }
+            }
+        });
+
+        // Crear diálogo con lista
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Dispositivos en lista blanca (" + snapshot.size() + ")");
+        builder.setView(layout);
         builder.setPositiveButton("Cerrar", null);
 
         final AlertDialog dialog = builder.create();
 
         // Configurar evento de clic para eliminar dispositivos
-        ListView listView = dialog.getListView();
         listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                final WhitelistedDevice device = adapter.getItem(position);
+
                 // Preguntar si se desea eliminar
                 AlertDialog.Builder confirmBuilder = new AlertDialog.Builder(MainActivity.this);
                 confirmBuilder.setTitle("Eliminar dispositivo");
                 confirmBuilder.setMessage("¿Desea eliminar este dispositivo de la lista blanca?");
 
                 confirmBuilder.setPositiveButton("Sí", (dialogInterface, i) -> {
-                    // Eliminar dispositivo
-                    WhitelistedDevice device = devices.get(position);
-                    USBReceiver.removeDeviceFromWhitelist(MainActivity.this, device.getId());
-
-                    Toast.makeText(MainActivity.this,
-                            "Dispositivo eliminado de la lista blanca",
-                            Toast.LENGTH_SHORT).show();
-
-                    dialog.dismiss();
-
-                    // Actualizar lista
-                    showWhitelistedDevices();
+                    // Eliminar dispositivo en segundo plano y después quitar solo su fila
+                    USBReceiver.removeDeviceFromWhitelistAsync(MainActivity.this, device.getId(),
+                            success -> runOnUiThread(() -> {
+                                if (!success) {
+                                    Toast.makeText(MainActivity.this,
+                                            "No se pudo eliminar el dispositivo de la lista blanca",
+                                            Toast.LENGTH_LONG).show();
+                                    return;
+                                }
+                                adapter.remove(device);
+
+                                Toast.makeText(MainActivity.this,
+                                        "Dispositivo eliminado de la lista blanca",
+                                        Toast.LENGTH_SHORT).show();
+
+                                if (adapter.getTotalCount() == 0) {
+                                    dialog.dismiss();
+                                }
+                            }));
                 });
 
                 confirmBuilder.setNegativeButton("No", null);
@@ -247,6 +293,7 @@ public class MainActivity extends Activity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        PolicyStore.removeListener(policyListener);
 
         // Desregistrar receptor si existe
         if (usbReceiver != null) {
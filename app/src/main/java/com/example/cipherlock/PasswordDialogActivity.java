@@ -1,15 +1,22 @@
 package com.example.cipherlock;
 
 import android.app.Activity;
-import android.content.SharedPreferences;
+import android.content.Context;
+import android.content.Intent;
 import android.os.Bundle;
-import android.os.CountDownTimer;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.View;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class PasswordDialogActivity extends Activity {
     private EditText passwordInput;
@@ -18,38 +25,36 @@ public class PasswordDialogActivity extends Activity {
     private CheckBox rememberDeviceCheckbox;
     private TextView timerTextView;
 
-    private String deviceId;
-    private String deviceName;
-    private CountDownTimer countDownTimer;
+    private TextView deviceNameText;
 
-    private static final String PREFS_NAME = "UsbAuthPrefs";
-    private static final String PASSWORD_KEY = "password";
-    private static final int TIMER_DURATION = 30000; // 30 segundos
-    private static final int TIMER_INTERVAL = 1000; // 1 segundo
+    // Dispositivos de la sesión (ID -> nombre), agrupados por AttachCoalescer
+    private final Map<String, String> pendingDevices = new LinkedHashMap<>();
 
-    static {
-        System.loadLibrary("usb_auth_native");
-    }
+    // Los plazos, reintentos y el bloqueo final los lleva el planificador del servicio;
+    // el diálogo solo muestra su estado
+    private PendingAuthScheduler scheduler;
+    private final Handler timerHandler = new Handler(Looper.getMainLooper());
+    private final Runnable timerRunnable = this::updateTimerText;
+    private final PendingAuthScheduler.Listener resolvedListener =
+            (deviceId, outcome) -> runOnUiThread(() -> onDeviceResolved(deviceId, outcome));
 
-    // Declaración de método nativo
-    public native boolean allowUsbDataTransfer();
-    public native boolean blockUsbDataTransfer();
+    private static final int TIMER_INTERVAL = 1000; // 1 segundo
 
     /**
      * Inicializa la interfaz y componentes del diálogo de contraseña.
-     * Comienza un temporizador de 30 segundos.
+     * Muestra la cuenta atrás de las solicitudes pendientes en el planificador.
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_password_dialog);
 
-        // Obtener información del dispositivo conectado
-        deviceId = getIntent().getStringExtra("device_id");
-        deviceName = getIntent().getStringExtra("device_name");
-        if (deviceName == null) {
-            deviceName = "Dispositivo desconocido";
-        }
+        scheduler = UsbAuthService.getPendingAuthScheduler(this);
+        scheduler.addListener(resolvedListener);
+
+        // Obtener información de los dispositivos conectados
+        addDevicesFromIntent(getIntent());
+        recordLaunchLatency(getIntent());
 
         // Inicializar componentes de UI
         passwordInput = findViewById(R.id.password_input);
@@ -58,12 +63,12 @@ public class PasswordDialogActivity extends Activity {
         rememberDeviceCheckbox = findViewById(R.id.remember_device_checkbox);
         timerTextView = findViewById(R.id.timer_text);
 
-        // Mostrar nombre del dispositivo
-        TextView deviceNameText = findViewById(R.id.device_name_text);
-        deviceNameText.setText("Dispositivo: " + deviceName);
+        // Mostrar nombre de los dispositivos
+        deviceNameText = findViewById(R.id.device_name_text);
+        updateDeviceNameText();
 
         // Bloquear transferencia al mostrar el diálogo
-        blockUsbDataTransfer();
+        markDevicesPending();
 
         // Configurar listeners de botones
         unlockButton.setOnClickListener(new View.OnClickListener() {
@@ -80,99 +85,244 @@ public class PasswordDialogActivity extends Activity {
             }
         });
 
-        // Iniciar temporizador de 30 segundos
-        startTimer();
+        if (pendingDevices.isEmpty()) {
+            // Intent antiguo: sus solicitudes ya se resolvieron
+            finish();
+            return;
+        }
+        updateTimerText();
     }
 
     /**
-     * Inicia un temporizador de 30 segundos. Si se acaba el tiempo,
-     * se cancela la autenticación automáticamente.
+     * Recibe dispositivos conectados mientras el diálogo ya está visible.
+     * Se suman a la sesión actual; cada uno conserva su plazo en el planificador.
      */
-    private void startTimer() {
-        countDownTimer = new CountDownTimer(TIMER_DURATION, TIMER_INTERVAL) {
-            @Override
-            public void onTick(long millisUntilFinished) {
-                // Actualizar texto del temporizador
-                int secondsLeft = (int) (millisUntilFinished / 1000);
-                timerTextView.setText("Tiempo restante: " + secondsLeft + " segundos");
-
-                // Cambiar color cuando queden pocos segundos
-                if (secondsLeft <= 5) {
-                    timerTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
-                }
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        addDevicesFromIntent(intent);
+        recordLaunchLatency(intent);
+        updateDeviceNameText();
+        markDevicesPending();
+    }
+
+    /**
+     * Añade a la sesión los dispositivos del intent (lista agrupada o dispositivo único)
+     */
+    private void addDevicesFromIntent(Intent intent) {
+        String[] ids = intent.getStringArrayExtra(AttachCoalescer.EXTRA_DEVICE_IDS);
+        String[] names = intent.getStringArrayExtra(AttachCoalescer.EXTRA_DEVICE_NAMES);
+
+        if (ids == null) {
+            String deviceId = intent.getStringExtra("device_id");
+            ids = deviceId != null ? new String[] {deviceId} : new String[0];
+            names = new String[] {intent.getStringExtra("device_name")};
+        }
+
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (pendingDevices.containsKey(ids[i]) || !scheduler.isPending(ids[i])) {
+                continue;
             }
+            String name = names != null && i < names.length ? names[i] : null;
+            pendingDevices.put(ids[i], name != null ? name : "Dispositivo desconocido");
+            added.add(ids[i]);
+        }
+        scheduler.attach(added);
+    }
 
-            @Override
-            public void onFinish() {
-                timerTextView.setText("¡Tiempo agotado!");
-                Toast.makeText(PasswordDialogActivity.this,
-                        "Tiempo agotado. Acceso denegado.",
-                        Toast.LENGTH_SHORT).show();
-                cancelAuthentication();
+    /**
+     * Registra la latencia desde la conexión y desde startActivity hasta mostrar el diálogo
+     */
+    private void recordLaunchLatency(Intent intent) {
+        long launchNanos = intent.getLongExtra(AttachCoalescer.EXTRA_LAUNCH_NANOS, 0);
+        if (launchNanos != 0) {
+            AttachMetrics.record(AttachMetrics.Stage.ACTIVITY_LAUNCH, launchNanos);
+        }
+        long attachNanos = intent.getLongExtra(AttachCoalescer.EXTRA_ATTACH_NANOS, 0);
+        if (attachNanos != 0) {
+            AttachMetrics.record(AttachMetrics.Stage.ATTACH_TO_DIALOG, attachNanos);
+        }
+    }
+
+    private void updateDeviceNameText() {
+        if (pendingDevices.size() <= 1) {
+            String name = pendingDevices.isEmpty()
+                    ? "Dispositivo desconocido" : pendingDevices.values().iterator().next();
+            deviceNameText.setText("Dispositivo: " + name);
+        } else {
+            StringBuilder builder = new StringBuilder("Dispositivos (" + pendingDevices.size() + "):");
+            for (String name : pendingDevices.values()) {
+                builder.append("\n• ").append(name);
             }
-        }.start();
+            deviceNameText.setText(builder.toString());
+        }
     }
 
     /**
-     * Verifica si la contraseña ingresada es correcta.
-     * Si es correcta y el checkbox está marcado, añade el dispositivo a la lista blanca.
+     * Muestra el tiempo restante según el planificador y se vuelve a programar cada segundo
+     */
+    private void updateTimerText() {
+        timerHandler.removeCallbacks(timerRunnable);
+        long remaining = scheduler.getRemainingMillis(pendingDevices.keySet());
+        if (remaining < 0) {
+            return;
+        }
+
+        int secondsLeft = (int) ((remaining + 999) / 1000);
+        timerTextView.setText("Tiempo restante: " + secondsLeft + " segundos");
+
+        // Cambiar color cuando queden pocos segundos
+        if (secondsLeft <= 5) {
+            timerTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
+        }
+        timerHandler.postDelayed(timerRunnable, TIMER_INTERVAL);
+    }
+
+    /**
+     * El planificador ha cerrado la solicitud de un dispositivo de la sesión
+     */
+    private void onDeviceResolved(String deviceId, PendingAuthScheduler.Outcome outcome) {
+        if (pendingDevices.remove(deviceId) == null || isFinishing()) {
+            return;
+        }
+
+        if (outcome == PendingAuthScheduler.Outcome.TIMEOUT && pendingDevices.isEmpty()) {
+            timerTextView.setText("¡Tiempo agotado!");
+            Toast.makeText(this, "Tiempo agotado. Acceso denegado.", Toast.LENGTH_SHORT).show();
+        } else if (outcome == PendingAuthScheduler.Outcome.TOO_MANY_FAILURES) {
+            Toast.makeText(this, "Demasiados intentos. Acceso denegado.", Toast.LENGTH_SHORT).show();
+        }
+
+        if (pendingDevices.isEmpty()) {
+            finish();
+        } else {
+            updateDeviceNameText();
+            updateTimerText();
+        }
+    }
+
+    /**
+     * Verifica la contraseña ingresada en segundo plano (PBKDF2) sin bloquear la interfaz
      */
     private void verifyPassword() {
         String enteredPassword = passwordInput.getText().toString();
-        SharedPreferences settings = getSharedPreferences(PREFS_NAME, 0);
-        String savedPassword = settings.getString(PASSWORD_KEY, "");
+        unlockButton.setEnabled(false);
+        PasswordStore.verifyAsync(this, enteredPassword,
+                matches -> runOnUiThread(() -> onPasswordChecked(matches)));
+    }
 
-        if (enteredPassword.equals(savedPassword)) {
-            // Detener temporizador
-            if (countDownTimer != null) {
-                countDownTimer.cancel();
+    /**
+     * Resultado de la verificación.
+     * Si es correcta y el checkbox está marcado, añade el dispositivo a la lista blanca.
+     */
+    private void onPasswordChecked(boolean matches) {
+        if (isFinishing() || pendingDevices.isEmpty()) {
+            // Las solicitudes se cerraron mientras se verificaba
+            return;
+        }
+        unlockButton.setEnabled(true);
+
+        if (matches) {
+            timerHandler.removeCallbacks(timerRunnable);
+
+            // Cerrar primero las solicitudes en el planificador: un plazo que venza después
+            // ya no puede bloquear lo que se va a permitir. Los que vencieron antes siguen
+            // bloqueados. La sesión se copia porque el aviso de cierre la modifica.
+            Map<String, String> session = new LinkedHashMap<>(pendingDevices);
+            List<String> allowed = scheduler.allow(new ArrayList<>(session.keySet()));
+            if (allowed.isEmpty()) {
+                Toast.makeText(this, "Tiempo agotado. Acceso denegado.", Toast.LENGTH_SHORT).show();
+                finish();
+                return;
             }
 
             // Contraseña correcta, permitir acceso
-            allowUsbDataTransfer();
-
-            // Si está marcado "recordar dispositivo", añadir a lista blanca
-            if (rememberDeviceCheckbox.isChecked() && deviceId != null) {
-                USBReceiver.addDeviceToWhitelist(this, deviceId, deviceName);
-                Toast.makeText(this,
-                        "Dispositivo añadido a lista blanca",
-                        Toast.LENGTH_SHORT).show();
+            EnforcementController enforcement = EnforcementController.getInstance();
+            for (String deviceId : allowed) {
+                enforcement.allow(DeviceFingerprint.of(deviceId));
+            }
+            recordAudit(AuditLog.Event.PASSWORD_SUCCESS, allowed);
+
+            // Permiso de sesión: una reconexión próxima no vuelve a pedir contraseña
+            SessionGrants grants = SessionGrants.getInstance();
+            long grantTtl = SessionGrants.getTtlMillis(this);
+            for (String deviceId : allowed) {
+                grants.grant(DeviceFingerprint.of(deviceId), grantTtl);
+            }
+
+            // Si está marcado "recordar dispositivo", añadir todos a lista blanca
+            if (rememberDeviceCheckbox.isChecked()) {
+                Map<String, String> remembered = new LinkedHashMap<>();
+                for (String deviceId : allowed) {
+                    remembered.put(deviceId, session.get(deviceId));
+                }
+                // La escritura hace fsync: fuera del hilo principal. El diálogo ya se habrá
+                // cerrado al terminar, así que el aviso usa el contexto de la aplicación.
+                final Context appContext = getApplicationContext();
+                final String message = remembered.size() == 1
+                        ? "Dispositivo añadido a lista blanca"
+                        : "Dispositivos añadidos a lista blanca";
+                final Handler mainHandler = new Handler(Looper.getMainLooper());
+                USBReceiver.addDevicesToWhitelistAsync(this, remembered, () -> mainHandler.post(
+                        () -> Toast.makeText(appContext, message, Toast.LENGTH_SHORT).show()));
             }
 
             Toast.makeText(this, "Acceso concedido", Toast.LENGTH_SHORT).show();
             finish();
         } else {
-            Toast.makeText(this, "Contraseña incorrecta", Toast.LENGTH_SHORT).show();
-            passwordInput.setText("");
+            recordAudit(AuditLog.Event.PASSWORD_FAILURE, pendingDevices.keySet());
+            // Con el último intento fallido el planificador bloquea y cierra el diálogo
+            int attemptsLeft = scheduler.recordFailure(new ArrayList<>(pendingDevices.keySet()));
+            if (attemptsLeft > 0) {
+                Toast.makeText(this, "Contraseña incorrecta", Toast.LENGTH_SHORT).show();
+                passwordInput.setText("");
+            }
         }
     }
 
     /**
-     * Cancela la autenticación y bloquea el acceso al dispositivo
+     * Dispositivos de la sesión a la espera de contraseña (bloqueados)
      */
-    private void cancelAuthentication() {
-        // Detener temporizador
-        if (countDownTimer != null) {
-            countDownTimer.cancel();
+    private void markDevicesPending() {
+        EnforcementController enforcement = EnforcementController.getInstance();
+        for (String deviceId : pendingDevices.keySet()) {
+            enforcement.markPending(DeviceFingerprint.of(deviceId));
+        }
+    }
+
+    /**
+     * Registra el evento para cada dispositivo dado
+     */
+    private void recordAudit(AuditLog.Event event, Collection<String> deviceIds) {
+        AuditLog audit = AuditLog.getInstance(this);
+        for (String deviceId : deviceIds) {
+            audit.record(event, deviceId);
         }
+    }
 
-        // Asegurar que transferencia queda bloqueada
-        blockUsbDataTransfer();
+    /**
+     * Cancela la autenticación; el planificador deja bloqueados los dispositivos
+     */
+    private void cancelAuthentication() {
+        timerHandler.removeCallbacks(timerRunnable);
+        scheduler.cancel(new ArrayList<>(pendingDevices.keySet()));
         finish();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        timerHandler.removeCallbacks(timerRunnable);
+        scheduler.removeListener(resolvedListener);
 
-        // Detener temporizador si existe
-        if (countDownTimer != null) {
-            countDownTimer.cancel();
-        }
-
-        // Si se cierra el diálogo sin verificar, mantener bloqueado
-        if (!isFinishing()) {
-            blockUsbDataTransfer();
+        List<String> remaining = new ArrayList<>(pendingDevices.keySet());
+        if (isFinishing()) {
+            // Cerrado sin contraseña (p. ej. botón atrás): equivale a cancelar
+            scheduler.cancel(remaining);
+        } else {
+            // Destruido por el sistema: la solicitud sigue viva y se reintentará al vencer
+            scheduler.detach(remaining);
         }
     }
-}
\ No newline at end of file
+}
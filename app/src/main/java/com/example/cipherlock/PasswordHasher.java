@@ -0,0 +1,184 @@
+package com.example.cipherlock;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Hash de contraseñas con PBKDF2-HMAC-SHA256 y sal aleatoria.
+ *
+ * Formato almacenado: "pbkdf2-sha256$iteraciones$sal$hash" (sal y hash en hexadecimal).
+ * PBKDF2 se implementa sobre HmacSHA256 porque SecretKeyFactory solo ofrece la variante
+ * SHA256 desde API 26; el bucle reutiliza el Mac y los buffers, sin asignaciones.
+ * Cualquier otro valor almacenado se trata como contraseña antigua en texto plano.
+ */
+public final class PasswordHasher {
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final String HMAC = "HmacSHA256";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    private static final int CALIBRATION_ITERATIONS = 20000;
+
+    static final int MIN_ITERATIONS = 10000;
+    static final int MAX_ITERATIONS = 2000000;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private PasswordHasher() {
+    }
+
+    /**
+     * Calcula el hash de la contraseña con una sal nueva
+     */
+    public static String hash(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations);
+        return PREFIX + iterations + '$' + toHex(salt) + '$' + toHex(hash);
+    }
+
+    /**
+     * Comprueba la contraseña contra el valor almacenado. La comparación final no
+     * depende de en qué byte difieren.
+     */
+    public static boolean verify(String password, String stored) {
+        if (stored == null) {
+            return false;
+        }
+        if (!isHashed(stored)) {
+            // Contraseña antigua en texto plano, hasta que se actualice
+            return constantTimeEquals(password.getBytes(UTF_8), stored.getBytes(UTF_8));
+        }
+
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        int iterations;
+        try {
+            iterations = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        byte[] salt = fromHex(parts[2]);
+        byte[] expected = fromHex(parts[3]);
+        if (iterations <= 0 || salt == null || expected == null || expected.length != HASH_BYTES) {
+            return false;
+        }
+        return constantTimeEquals(pbkdf2(password, salt, iterations), expected);
+    }
+
+    /**
+     * Indica si el valor almacenado debe recalcularse: texto plano o coste distinto del actual
+     */
+    public static boolean needsUpgrade(String stored, int iterations) {
+        return stored == null || !isHashed(stored) || getIterations(stored) != iterations;
+    }
+
+    static boolean isHashed(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    /**
+     * Iteraciones del valor almacenado, o -1 si no es un hash reconocible
+     */
+    static int getIterations(String stored) {
+        if (!isHashed(stored)) {
+            return -1;
+        }
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return Integer.parseInt(stored.substring(PREFIX.length(), end < 0 ? stored.length() : end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Mide PBKDF2 en la CPU actual y devuelve las iteraciones que tardan unos targetMillis,
+     * redondeadas a miles y acotadas a [MIN_ITERATIONS, MAX_ITERATIONS]
+     */
+    public static int calibrate(long targetMillis) {
+        byte[] salt = new byte[SALT_BYTES];
+        // Primera pasada para cargar el proveedor y calentar el código
+        pbkdf2("calibracion", salt, CALIBRATION_ITERATIONS / 4);
+
+        long start = System.nanoTime();
+        pbkdf2("calibracion", salt, CALIBRATION_ITERATIONS);
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+
+        long iterations = CALIBRATION_ITERATIONS * targetMillis * 1000000L / elapsedNanos;
+        iterations = Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, iterations));
+        return (int) (iterations / 1000 * 1000);
+    }
+
+    /**
+     * Compara en tiempo constante respecto al contenido (solo depende de la longitud)
+     */
+    static boolean constantTimeEquals(byte[] a, byte[] b) {
+        int difference = a.length ^ b.length;
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            difference |= a[i] ^ b[i];
+        }
+        return difference == 0;
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256 (RFC 8018) de un solo bloque: HASH_BYTES es la salida de SHA-256
+     */
+    static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            byte[] key = password.getBytes(UTF_8);
+            // SecretKeySpec no admite claves vacías; HMAC rellena con ceros, así que {0} equivale
+            mac.init(new SecretKeySpec(key.length > 0 ? key : new byte[1], HMAC));
+
+            byte[] u = new byte[HASH_BYTES];
+            byte[] result = new byte[HASH_BYTES];
+            mac.update(salt);
+            mac.update(new byte[] {0, 0, 0, 1});
+            mac.doFinal(u, 0);
+            System.arraycopy(u, 0, result, 0, HASH_BYTES);
+
+            for (int i = 1; i < iterations; i++) {
+                mac.update(u);
+                mac.doFinal(u, 0);
+                for (int j = 0; j < HASH_BYTES; j++) {
+                    result[j] ^= u[j];
+                }
+            }
+            return result;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 no disponible", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static byte[] fromHex(String text) {
+        if (text.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(text.charAt(i * 2), 16);
+            int low = Character.digit(text.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.cipherlock;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Guarda y verifica la contraseña en UsbAuthPrefs como hash PBKDF2 (PasswordHasher).
+ *
+ * El coste se calibra una vez por dispositivo para que desbloquear tarde unos
+ * TARGET_UNLOCK_MILLIS. Todo el trabajo de PBKDF2 se hace en un hilo propio, nunca en
+ * el hilo principal. Tras una verificación correcta, una contraseña en texto plano o con
+ * otro coste se vuelve a guardar con el coste actual.
+ */
+public class PasswordStore {
+    private static final String TAG = "PasswordStore";
+    private static final String PREFS_NAME = "UsbAuthPrefs";
+    private static final String PASSWORD_KEY = "password";
+    static final String ITERATIONS_KEY = "password_kdf_iterations";
+    static final long TARGET_UNLOCK_MILLIS = 250;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "password-kdf");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Resultado de una verificación o de un guardado; se invoca en el hilo de PBKDF2
+     */
+    public interface Callback {
+        void onResult(boolean success);
+    }
+
+    private PasswordStore() {
+    }
+
+    /**
+     * Guarda el hash de la nueva contraseña y pasa a callback si quedó guardado, en el hilo
+     * de PBKDF2. Si falla, la contraseña anterior sigue vigente.
+     */
+    public static void saveAsync(Context context, String password, Callback callback) {
+        Context appContext = context.getApplicationContext();
+        EXECUTOR.execute(() -> {
+            boolean saved;
+            try {
+                SharedPreferences settings = appContext.getSharedPreferences(PREFS_NAME, 0);
+                // commit() y no apply(): hay que saber si llegó al disco antes de avisar
+                saved = settings.edit()
+                        .putString(PASSWORD_KEY, PasswordHasher.hash(password, getIterations(appContext)))
+                        .commit();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error al guardar la contraseña", e);
+                saved = false;
+            }
+            if (saved) {
+                PolicyStore.refresh(appContext);
+            }
+            callback.onResult(saved);
+        });
+    }
+
+    /**
+     * Verifica la contraseña en segundo plano y actualiza el hash guardado si hace falta
+     */
+    public static void verifyAsync(Context context, String password, Callback callback) {
+        Context appContext = context.getApplicationContext();
+        EXECUTOR.execute(() -> {
+            long start = AttachMetrics.start();
+            String stored = PolicyStore.get(appContext).getPasswordHash();
+            boolean matches = PasswordHasher.verify(password, stored);
+            AttachMetrics.record(AttachMetrics.Stage.PASSWORD_VERIFY, start);
+
+            // Sin contraseña configurada no hay nada que actualizar
+            if (matches && !stored.isEmpty()) {
+                int iterations = getIterations(appContext);
+                if (PasswordHasher.needsUpgrade(stored, iterations)) {
+                    Log.d(TAG, "Actualizando hash de contraseña a " + iterations + " iteraciones");
+                    appContext.getSharedPreferences(PREFS_NAME, 0).edit()
+                            .putString(PASSWORD_KEY, PasswordHasher.hash(password, iterations))
+                            .apply();
+                    PolicyStore.refresh(appContext);
+                }
+            }
+            callback.onResult(matches);
+        });
+    }
+
+    /**
+     * Coste calibrado para este dispositivo; se mide la primera vez y se guarda
+     */
+    private static int getIterations(Context context) {
+        int iterations = PolicyStore.get(context).getPasswordIterations();
+        if (iterations < PasswordHasher.MIN_ITERATIONS || iterations > PasswordHasher.MAX_ITERATIONS) {
+            iterations = PasswordHasher.calibrate(TARGET_UNLOCK_MILLIS);
+            Log.d(TAG, "PBKDF2 calibrado: " + iterations + " iteraciones para "
+                    + TARGET_UNLOCK_MILLIS + " ms");
+            context.getSharedPreferences(PREFS_NAME, 0).edit().putInt(ITERATIONS_KEY, iterations).apply();
+            PolicyStore.refresh(context);
+        }
+        return iterations;
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.cipherlock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autenticaciones pendientes ordenadas por plazo, independientes de la interfaz.
+ *
+ * Cada dispositivo bloqueado a la espera de contraseña tiene una solicitud con su plazo.
+ * Un único hilo despierta en el plazo más próximo: si no hay diálogo mostrándola y quedan
+ * reintentos, vuelve a pedir la contraseña con un plazo nuevo; si no, bloquea definitivamente.
+ * Los diálogos solo se registran (attach/detach), consultan el tiempo restante y comunican
+ * el resultado; si un diálogo muere, la solicitud sigue teniendo dueño.
+ */
+public class PendingAuthScheduler {
+
+    public enum Outcome { ALLOWED, TIMEOUT, CANCELLED, TOO_MANY_FAILURES, CLEARED }
+
+    /**
+     * Acciones sobre el sistema; se invocan fuera del bloqueo del planificador
+     */
+    public interface Callback {
+        /**
+         * Plazo vencido sin diálogo visible: volver a pedir la contraseña
+         */
+        void onRetry(String deviceId, String deviceName);
+
+        /**
+         * Solicitud cerrada sin contraseña correcta: el dispositivo queda bloqueado
+         */
+        void onFinalBlock(String deviceId, long fingerprint, Outcome outcome);
+    }
+
+    /**
+     * Recibe el cierre de cada solicitud, sea cual sea su resultado
+     */
+    public interface Listener {
+        void onResolved(String deviceId, Outcome outcome);
+    }
+
+    private static final class Request {
+        final String deviceId;
+        final long fingerprint;
+        final String deviceName;
+        long deadlineMillis;
+        int retries;
+        int failures;
+        int attachedDialogs;
+
+        Request(String deviceId, long fingerprint, String deviceName) {
+            this.deviceId = deviceId;
+            this.fingerprint = fingerprint;
+            this.deviceName = deviceName;
+        }
+    }
+
+    private final long timeoutMillis;
+    private final int maxRetries;
+    private final int maxFailures;
+    private final Callback callback;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Request> requests = new HashMap<>();
+    private final PriorityQueue<Request> deadlines = new PriorityQueue<>(8,
+            (a, b) -> Long.compare(a.deadlineMillis, b.deadlineMillis));
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pending-auth");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Runnable expireRunnable = this::expire;
+    private ScheduledFuture<?> wakeUp;
+    private long wakeUpDeadline;
+
+    // Métricas
+    private long submitted;
+    private long retried;
+    private long timedOut;
+
+    public PendingAuthScheduler(long timeoutMillis, int maxRetries, int maxFailures, Callback callback) {
+        this.timeoutMillis = timeoutMillis;
+        this.maxRetries = maxRetries;
+        this.maxFailures = maxFailures;
+        this.callback = callback;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Abre una solicitud para el dispositivo. Devuelve false si ya había una pendiente,
+     * que conserva su plazo.
+     */
+    public synchronized boolean submit(String deviceId, long fingerprint, String deviceName) {
+        if (requests.containsKey(deviceId)) {
+            return false;
+        }
+        Request request = new Request(deviceId, fingerprint, deviceName);
+        request.deadlineMillis = now() + timeoutMillis;
+        requests.put(deviceId, request);
+        deadlines.add(request);
+        submitted++;
+        scheduleWakeUp();
+        return true;
+    }
+
+    public synchronized boolean isPending(String deviceId) {
+        return requests.containsKey(deviceId);
+    }
+
+    /**
+     * Un diálogo empieza a mostrar estas solicitudes
+     */
+    public synchronized void attach(Collection<String> deviceIds) {
+        for (String deviceId : deviceIds) {
+            Request request = requests.get(deviceId);
+            if (request != null) {
+                request.attachedDialogs++;
+            }
+        }
+    }
+
+    /**
+     * El diálogo desaparece sin resolver: al vencer el plazo se reintentará
+     */
+    public synchronized void detach(Collection<String> deviceIds) {
+        for (String deviceId : deviceIds) {
+            Request request = requests.get(deviceId);
+            if (request != null && request.attachedDialogs > 0) {
+                request.attachedDialogs--;
+            }
+        }
+    }
+
+    /**
+     * Tiempo restante hasta el plazo más próximo de estas solicitudes, o -1 si ninguna sigue pendiente
+     */
+    public synchronized long getRemainingMillis(Collection<String> deviceIds) {
+        long now = now();
+        long remaining = -1;
+        for (String deviceId : deviceIds) {
+            Request request = requests.get(deviceId);
+            if (request != null) {
+                long left = Math.max(0, request.deadlineMillis - now);
+                remaining = remaining < 0 ? left : Math.min(remaining, left);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Contraseña correcta: cierra las solicitudes sin bloqueo. Devuelve los IDs que seguían
+     * pendientes; los demás ya se cerraron (p. ej. venció su plazo) y quedan bloqueados.
+     */
+    public List<String> allow(Collection<String> deviceIds) {
+        List<Request> resolved = resolve(deviceIds, Outcome.ALLOWED);
+        List<String> allowed = new ArrayList<>(resolved.size());
+        for (Request request : resolved) {
+            allowed.add(request.deviceId);
+        }
+        return allowed;
+    }
+
+    /**
+     * El usuario cancela: bloqueo definitivo
+     */
+    public void cancel(Collection<String> deviceIds) {
+        resolve(deviceIds, Outcome.CANCELLED);
+    }
+
+    /**
+     * Contraseña incorrecta. Devuelve los intentos que quedan; con 0 las solicitudes
+     * se han cerrado con bloqueo definitivo.
+     */
+    public int recordFailure(Collection<String> deviceIds) {
+        List<Request> exhausted = new ArrayList<>();
+        int attemptsLeft = maxFailures;
+        synchronized (this) {
+            for (String deviceId : deviceIds) {
+                Request request = requests.get(deviceId);
+                if (request == null) {
+                    continue;
+                }
+                request.failures++;
+                attemptsLeft = Math.min(attemptsLeft, maxFailures - request.failures);
+                if (request.failures >= maxFailures) {
+                    remove(request);
+                    exhausted.add(request);
+                }
+            }
+            scheduleWakeUp();
+        }
+        finish(exhausted, Outcome.TOO_MANY_FAILURES);
+        return Math.max(0, attemptsLeft);
+    }
+
+    /**
+     * Descarta todas las solicitudes sin bloquear, p. ej. al desactivar la protección
+     */
+    public void clear() {
+        List<Request> cleared;
+        synchronized (this) {
+            cleared = new ArrayList<>(requests.values());
+            requests.clear();
+            deadlines.clear();
+            scheduleWakeUp();
+        }
+        finish(cleared, Outcome.CLEARED);
+    }
+
+    public synchronized int size() {
+        return requests.size();
+    }
+
+    public synchronized String getMetrics() {
+        return "pendientes=" + requests.size() + " abiertas=" + submitted
+                + " reintentos=" + retried + " agotadas=" + timedOut;
+    }
+
+    private List<Request> resolve(Collection<String> deviceIds, Outcome outcome) {
+        List<Request> resolved = new ArrayList<>();
+        synchronized (this) {
+            for (String deviceId : deviceIds) {
+                Request request = requests.get(deviceId);
+                if (request != null) {
+                    remove(request);
+                    resolved.add(request);
+                }
+            }
+            scheduleWakeUp();
+        }
+        finish(resolved, outcome);
+        return resolved;
+    }
+
+    /**
+     * Procesa en orden de plazo todas las solicitudes vencidas
+     */
+    private void expire() {
+        List<Request> retries = new ArrayList<>();
+        List<Request> expired = new ArrayList<>();
+        synchronized (this) {
+            wakeUp = null;
+            long now = now();
+            Request head;
+            while ((head = deadlines.peek()) != null && head.deadlineMillis <= now) {
+                deadlines.poll();
+                if (head.attachedDialogs == 0 && head.retries < maxRetries) {
+                    // Nadie la está mostrando: se vuelve a pedir con un plazo nuevo
+                    head.retries++;
+                    head.deadlineMillis = now + timeoutMillis;
+                    deadlines.add(head);
+                    retries.add(head);
+                    retried++;
+                } else {
+                    requests.remove(head.deviceId);
+                    expired.add(head);
+                    timedOut++;
+                }
+            }
+            scheduleWakeUp();
+        }
+
+        for (Request request : retries) {
+            callback.onRetry(request.deviceId, request.deviceName);
+        }
+        finish(expired, Outcome.TIMEOUT);
+    }
+
+    private void finish(List<Request> resolved, Outcome outcome) {
+        for (Request request : resolved) {
+            if (outcome != Outcome.ALLOWED && outcome != Outcome.CLEARED) {
+                callback.onFinalBlock(request.deviceId, request.fingerprint, outcome);
+            }
+            for (Listener listener : listeners) {
+                listener.onResolved(request.deviceId, outcome);
+            }
+        }
+    }
+
+    private void remove(Request request) {
+        requests.remove(request.deviceId);
+        deadlines.remove(request);
+    }
+
+    /**
+     * Programa el despertar para el plazo más próximo; solo uno a la vez
+     */
+    private void scheduleWakeUp() {
+        Request head = deadlines.peek();
+        if (wakeUp != null && (head == null || head.deadlineMillis != wakeUpDeadline)) {
+            wakeUp.cancel(false);
+            wakeUp = null;
+        }
+        if (head != null && wakeUp == null) {
+            wakeUpDeadline = head.deadlineMillis;
+            wakeUp = scheduler.schedule(expireRunnable,
+                    Math.max(0, head.deadlineMillis - now()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.cipherlock;
+
+/**
+ * Política vigente como objeto inmutable: protección activa, hash de la contraseña,
+ * coste de PBKDF2, plazos, límites de la lista blanca y reglas compiladas.
+ *
+ * PolicyStore publica cada versión con una sola escritura volátil; las rutas calientes
+ * leen esa referencia y consultan los campos sin E/S ni bloqueos.
+ */
+public final class PolicySnapshot {
+    private final long version;
+    private final boolean protectionEnabled;
+    private final String passwordHash;
+    private final int passwordIterations;
+    private final long sessionGrantTtlMillis;
+    private final long coalesceWindowMillis;
+    private final int maxWhitelistDevices;
+    private final long whitelistMaxAgeMillis;
+    // JSON de origen de las reglas, para recompilarlas solo cuando cambian
+    private final String rulesJson;
+    private final WhitelistRuleEngine rules;
+
+    public PolicySnapshot(long version, boolean protectionEnabled, String passwordHash, int passwordIterations,
+                          long sessionGrantTtlMillis, long coalesceWindowMillis,
+                          int maxWhitelistDevices, long whitelistMaxAgeMillis,
+                          String rulesJson, WhitelistRuleEngine rules) {
+        this.version = version;
+        this.protectionEnabled = protectionEnabled;
+        this.passwordHash = passwordHash;
+        this.passwordIterations = passwordIterations;
+        this.sessionGrantTtlMillis = sessionGrantTtlMillis;
+        this.coalesceWindowMillis = coalesceWindowMillis;
+        this.maxWhitelistDevices = maxWhitelistDevices;
+        this.whitelistMaxAgeMillis = whitelistMaxAgeMillis;
+        this.rulesJson = rulesJson;
+        this.rules = rules;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isProtectionEnabled() {
+        return protectionEnabled;
+    }
+
+    /**
+     * Valor guardado de la contraseña (hash PBKDF2, o texto plano hasta su actualización)
+     */
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    /**
+     * Iteraciones calibradas de PBKDF2, o 0 si aún no se han calibrado
+     */
+    public int getPasswordIterations() {
+        return passwordIterations;
+    }
+
+    public long getSessionGrantTtlMillis() {
+        return sessionGrantTtlMillis;
+    }
+
+    public long getCoalesceWindowMillis() {
+        return coalesceWindowMillis;
+    }
+
+    /**
+     * Tamaño máximo de la lista blanca; al superarlo se expulsan los usados hace más tiempo. 0 sin límite.
+     */
+    public int getMaxWhitelistDevices() {
+        return maxWhitelistDevices;
+    }
+
+    /**
+     * Tiempo sin conexiones tras el que un dispositivo sale de la lista blanca; 0 sin límite
+     */
+    public long getWhitelistMaxAgeMillis() {
+        return whitelistMaxAgeMillis;
+    }
+
+    public WhitelistRuleEngine getRules() {
+        return rules;
+    }
+
+    String getRulesJson() {
+        return rulesJson;
+    }
+
+    /**
+     * Indica si ambas instantáneas describen la misma configuración, sin mirar la versión
+     */
+    boolean hasSameSettings(PolicySnapshot other) {
+        return protectionEnabled == other.protectionEnabled
+                && passwordIterations == other.passwordIterations
+                && sessionGrantTtlMillis == other.sessionGrantTtlMillis
+                && coalesceWindowMillis == other.coalesceWindowMillis
+                && maxWhitelistDevices == other.maxWhitelistDevices
+                && whitelistMaxAgeMillis == other.whitelistMaxAgeMillis
+                && passwordHash.equals(other.passwordHash)
+                && rulesJson.equals(other.rulesJson);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.cipherlock;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Publica la política de UsbAuthPrefs como PolicySnapshot inmutable.
+ *
+ * La primera consulta carga las preferencias y se suscribe a sus cambios; cada cambio
+ * construye una instantánea nueva (las reglas solo se recompilan si cambió su JSON), la
+ * publica con una escritura volátil y avisa a los suscriptores. Las consultas posteriores
+ * son una lectura volátil, sin E/S.
+ */
+public class PolicyStore {
+    private static final String TAG = "PolicyStore";
+    private static final String PREFS_NAME = "UsbAuthPrefs";
+    private static final String PROTECTION_ENABLED_KEY = "protection_enabled";
+    private static final String PASSWORD_KEY = "password";
+    private static final String RULES_KEY = "whitelist_rules";
+
+    /**
+     * Recibe cada nueva versión de la política, en el hilo que la publicó
+     */
+    public interface Listener {
+        void onPolicyChanged(PolicySnapshot policy);
+    }
+
+    private static volatile PolicySnapshot current;
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private static Context appContext;
+    // SharedPreferences guarda los oyentes con referencias débiles: hay que retenerlo aquí
+    private static SharedPreferences.OnSharedPreferenceChangeListener preferenceListener;
+
+    private PolicyStore() {
+    }
+
+    /**
+     * Política vigente; solo la primera llamada del proceso lee las preferencias
+     */
+    public static PolicySnapshot get(Context context) {
+        PolicySnapshot policy = current;
+        return policy != null ? policy : load(context);
+    }
+
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Publica ya los cambios escritos en las preferencias, sin esperar al aviso en el hilo
+     * principal. Si no cambió nada no publica ni avisa, así que el aviso posterior es inocuo.
+     */
+    public static void refresh(Context context) {
+        load(context);
+        PolicySnapshot updated;
+        synchronized (PolicyStore.class) {
+            PolicySnapshot previous = current;
+            updated = read(appContext.getSharedPreferences(PREFS_NAME, 0), previous);
+            if (updated.hasSameSettings(previous)) {
+                return;
+            }
+            current = updated;
+        }
+
+        Log.d(TAG, "Política actualizada a la versión " + updated.getVersion());
+        for (Listener listener : listeners) {
+            listener.onPolicyChanged(updated);
+        }
+    }
+
+    private static synchronized PolicySnapshot load(Context context) {
+        if (current == null) {
+            appContext = context.getApplicationContext();
+            SharedPreferences settings = appContext.getSharedPreferences(PREFS_NAME, 0);
+            current = read(settings, null);
+            preferenceListener = (preferences, key) -> refresh(appContext);
+            settings.registerOnSharedPreferenceChangeListener(preferenceListener);
+        }
+        return current;
+    }
+
+    /**
+     * Construye la instantánea desde las preferencias, reutilizando las reglas de previous
+     * si su JSON no ha cambiado
+     */
+    private static PolicySnapshot read(SharedPreferences settings, PolicySnapshot previous) {
+        String rulesJson = settings.getString(RULES_KEY, "");
+        WhitelistRuleEngine rules = previous != null && previous.getRulesJson().equals(rulesJson)
+                ? previous.getRules()
+                : new WhitelistRuleEngine(USBReceiver.parseWhitelistRules(rulesJson));
+
+        return new PolicySnapshot(
+                previous != null ? previous.getVersion() + 1 : 0,
+                settings.getBoolean(PROTECTION_ENABLED_KEY, false),
+                settings.getString(PASSWORD_KEY, ""),
+                settings.getInt(PasswordStore.ITERATIONS_KEY, 0),
+                settings.getLong(SessionGrants.TTL_KEY, SessionGrants.DEFAULT_TTL_MILLIS),
+                settings.getLong(AttachCoalescer.WINDOW_KEY, AttachCoalescer.DEFAULT_WINDOW_MS),
+                settings.getInt(USBReceiver.MAX_DEVICES_KEY, USBReceiver.DEFAULT_MAX_DEVICES),
+                settings.getLong(USBReceiver.MAX_AGE_KEY, USBReceiver.DEFAULT_MAX_AGE_MILLIS),
+                rulesJson,
+                rules);
+    }
+}
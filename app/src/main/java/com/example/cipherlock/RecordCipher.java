@@ -0,0 +1,89 @@
+package com.example.cipherlock;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cifrado por registro de la lista blanca en disco.
+ *
+ * Cada registro se sella por separado con AES-GCM bajo la clave de datos:
+ * nonce aleatorio (12) | texto cifrado | etiqueta (16). Así un alta o una baja solo
+ * cifra su propio registro. Para buscar sin descifrar, el índice usa un hash con clave
+ * (HMAC-SHA256 truncado a INDEX_SIZE bytes) bajo una segunda clave independiente.
+ *
+ * Las claves se guardan en memoria durante toda la vida del proceso; quien las genera
+ * y protege en disco es WhitelistKeys.
+ */
+public final class RecordCipher {
+    static final int KEY_SIZE = 32;
+    static final int NONCE_SIZE = 12;
+    static final int TAG_SIZE = 16;
+    static final int OVERHEAD = NONCE_SIZE + TAG_SIZE;
+    static final int INDEX_SIZE = 16;
+
+    private final SecretKeySpec dataKey;
+    private final SecureRandom random = new SecureRandom();
+    // Cipher y Mac no son seguros entre hilos: se reutilizan bajo el monitor de esta instancia
+    private final Cipher cipher;
+    private final Mac mac;
+
+    public RecordCipher(byte[] dataKey, byte[] indexKey) throws GeneralSecurityException {
+        if (dataKey.length != KEY_SIZE || indexKey.length != KEY_SIZE) {
+            throw new GeneralSecurityException("Las claves deben tener " + KEY_SIZE + " bytes");
+        }
+        this.dataKey = new SecretKeySpec(dataKey, "AES");
+        this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        this.mac = Mac.getInstance("HmacSHA256");
+        this.mac.init(new SecretKeySpec(indexKey, "HmacSHA256"));
+    }
+
+    /**
+     * Clave aleatoria de KEY_SIZE bytes para la clave de datos o la de índice
+     */
+    public static byte[] generateKey() {
+        byte[] key = new byte[KEY_SIZE];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    /**
+     * Sella un registro; aad se autentica sin cifrarse (p. ej. el tipo de operación)
+     */
+    public synchronized byte[] seal(byte[] plaintext, byte[] aad) throws GeneralSecurityException {
+        byte[] sealed = new byte[NONCE_SIZE + plaintext.length + TAG_SIZE];
+        random.nextBytes(sealed);
+        cipher.init(Cipher.ENCRYPT_MODE, dataKey, new GCMParameterSpec(TAG_SIZE * 8, sealed, 0, NONCE_SIZE));
+        cipher.updateAAD(aad);
+        cipher.doFinal(plaintext, 0, plaintext.length, sealed, NONCE_SIZE);
+        return sealed;
+    }
+
+    /**
+     * Abre un registro sellado. Lanza AEADBadTagException si la clave no corresponde
+     * o el registro fue alterado.
+     */
+    public synchronized byte[] open(byte[] sealed, int offset, int length, byte[] aad)
+            throws GeneralSecurityException {
+        if (length < OVERHEAD) {
+            throw new GeneralSecurityException("Registro cifrado demasiado corto");
+        }
+        cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(TAG_SIZE * 8, sealed, offset, NONCE_SIZE));
+        cipher.updateAAD(aad);
+        return cipher.doFinal(sealed, offset + NONCE_SIZE, length - NONCE_SIZE);
+    }
+
+    /**
+     * Entrada del índice para un ID: no revela el ID y solo se reproduce con la clave
+     */
+    public synchronized byte[] indexOf(String deviceId) {
+        byte[] digest = mac.doFinal(deviceId.getBytes(StandardCharsets.UTF_8));
+        byte[] index = new byte[INDEX_SIZE];
+        System.arraycopy(digest, 0, index, 0, INDEX_SIZE);
+        return index;
+    }
+}
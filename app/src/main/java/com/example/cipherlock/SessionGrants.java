@@ -0,0 +1,94 @@
+package com.example.cipherlock;
+
+import android.content.Context;
+import android.util.Log;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Permisos temporales de sesión: tras introducir la contraseña, el dispositivo puede
+ * desconectarse y volver a conectarse sin diálogo mientras no caduque el permiso.
+ *
+ * Los permisos viven en una TimingWheel indexada por huella, así que la consulta es O(1).
+ * Un único hilo avanza la rueda cada TICK_MILLIS y solo mientras haya permisos vigentes;
+ * la consulta compara además con el plazo exacto, de modo que un tick retrasado nunca
+ * alarga un permiso.
+ */
+public class SessionGrants {
+    private static final String TAG = "SessionGrants";
+    static final String TTL_KEY = "session_grant_ttl_ms";
+    static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000; // 5 minutos
+    private static final long TICK_MILLIS = 1000;
+
+    private static SessionGrants instance;
+
+    private final TimingWheel wheel = new TimingWheel(TICK_MILLIS, System.currentTimeMillis());
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "session-grants");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final TimingWheel.ExpiryListener expiryListener =
+            key -> Log.d(TAG, "Permiso de sesión caducado: " + Long.toHexString(key));
+    private ScheduledFuture<?> ticker;
+
+    public static synchronized SessionGrants getInstance() {
+        if (instance == null) {
+            instance = new SessionGrants();
+        }
+        return instance;
+    }
+
+    /**
+     * Duración configurada de los permisos; 0 los desactiva
+     */
+    public static long getTtlMillis(Context context) {
+        return PolicyStore.get(context).getSessionGrantTtlMillis();
+    }
+
+    /**
+     * Concede (o renueva) un permiso de ttlMillis para el dispositivo
+     */
+    public synchronized void grant(long fingerprint, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        wheel.schedule(fingerprint, System.currentTimeMillis(), ttlMillis);
+        if (ticker == null) {
+            ticker = scheduler.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Indica si el dispositivo tiene un permiso vigente (O(1))
+     */
+    public synchronized boolean isGranted(long fingerprint) {
+        return wheel.isActive(fingerprint, System.currentTimeMillis());
+    }
+
+    public synchronized void revoke(long fingerprint) {
+        wheel.cancel(fingerprint);
+    }
+
+    /**
+     * Retira todos los permisos, p. ej. al cambiar la contraseña o desactivar la protección
+     */
+    public synchronized void revokeAll() {
+        wheel.clear();
+    }
+
+    public synchronized int size() {
+        return wheel.size();
+    }
+
+    private synchronized void tick() {
+        wheel.advance(System.currentTimeMillis(), expiryListener);
+        if (wheel.size() == 0 && ticker != null) {
+            // Sin permisos vigentes: el hilo deja de despertarse
+            ticker.cancel(false);
+            ticker = null;
+        }
+    }
+}
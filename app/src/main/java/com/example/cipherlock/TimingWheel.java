@@ -0,0 +1,191 @@
+package com.example.cipherlock;
+
+/**
+ * Rueda de tiempo jerárquica para caducar claves long con coste O(1) por alta, baja y tick.
+ *
+ * LEVELS niveles de SLOTS huecos: el nivel 0 cubre SLOTS ticks, el nivel 1 SLOTS^2, etc.
+ * Cada entrada se coloca en el nivel más bajo que alcanza su plazo; cuando el nivel inferior
+ * da la vuelta, el hueco correspondiente del superior se redistribuye hacia abajo.
+ * Los plazos más allá del último nivel se acotan al máximo.
+ *
+ * No es segura entre hilos: el llamante debe sincronizar.
+ */
+public class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    /**
+     * Recibe las claves que caducan al avanzar la rueda
+     */
+    public interface ExpiryListener {
+        void onExpired(long key);
+    }
+
+    private static final class Node {
+        final long key;
+        long deadlineTick;
+        long deadlineMillis;
+        Node previous;
+        Node next;
+        int level;
+        int slot;
+
+        Node(long key) {
+            this.key = key;
+        }
+    }
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final Node[][] wheels = new Node[LEVELS][SLOTS];
+    private final LongHashMap<Node> nodes = new LongHashMap<>();
+    private long currentTick;
+
+    public TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Programa la caducidad de key tras delayMillis, sustituyendo un plazo anterior
+     */
+    public void schedule(long key, long nowMillis, long delayMillis) {
+        if (nodes.size() == 0) {
+            // Rueda vacía y sin avanzar: se alinea con el presente sin recorrer ticks
+            currentTick = Math.max(currentTick, (nowMillis - startMillis) / tickMillis);
+        }
+
+        Node node = nodes.get(key);
+        if (node != null) {
+            unlink(node);
+        } else {
+            node = new Node(key);
+            nodes.put(key, node);
+        }
+
+        node.deadlineMillis = nowMillis + delayMillis;
+        // Redondeo hacia arriba: nunca caduca antes de tiempo
+        long deadlineTick = (node.deadlineMillis - startMillis + tickMillis - 1) / tickMillis;
+        node.deadlineTick = Math.max(deadlineTick, currentTick + 1);
+        place(node);
+    }
+
+    public boolean cancel(long key) {
+        Node node = nodes.remove(key);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Indica si key está programada y su plazo no ha vencido, aunque la rueda vaya retrasada
+     */
+    public boolean isActive(long key, long nowMillis) {
+        Node node = nodes.get(key);
+        return node != null && node.deadlineMillis > nowMillis;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public void clear() {
+        for (Node[] wheel : wheels) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel[slot] = null;
+            }
+        }
+        nodes.clear();
+    }
+
+    /**
+     * Avanza la rueda hasta nowMillis y entrega a listener las claves vencidas
+     */
+    public void advance(long nowMillis, ExpiryListener listener) {
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        while (currentTick < targetTick && nodes.size() > 0) {
+            currentTick++;
+            cascade();
+            expireSlot(listener);
+        }
+        if (nodes.size() == 0) {
+            // Nada programado: saltar directamente al presente
+            currentTick = Math.max(currentTick, targetTick);
+        }
+    }
+
+    /**
+     * Al dar la vuelta un nivel, redistribuye el hueco que toca del nivel superior
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if (((currentTick >>> (SLOT_BITS * (level - 1))) & SLOT_MASK) != 0) {
+                return;
+            }
+            int slot = (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK;
+            Node node = wheels[level][slot];
+            wheels[level][slot] = null;
+            while (node != null) {
+                Node next = node.next;
+                node.previous = null;
+                node.next = null;
+                place(node);
+                node = next;
+            }
+        }
+    }
+
+    private void expireSlot(ExpiryListener listener) {
+        int slot = (int) currentTick & SLOT_MASK;
+        Node node = wheels[0][slot];
+        while (node != null) {
+            Node next = node.next;
+            if (node.deadlineTick <= currentTick) {
+                unlink(node);
+                nodes.remove(node.key);
+                if (listener != null) {
+                    listener.onExpired(node.key);
+                }
+            }
+            node = next;
+        }
+    }
+
+    private void place(Node node) {
+        long delta = Math.min(Math.max(node.deadlineTick - currentTick, 0), MAX_DELTA_TICKS);
+        long tick = currentTick + delta;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+
+        node.level = level;
+        node.slot = slot;
+        node.previous = null;
+        node.next = wheels[level][slot];
+        if (node.next != null) {
+            node.next.previous = node;
+        }
+        wheels[level][slot] = node;
+    }
+
+    private void unlink(Node node) {
+        if (node.previous != null) {
+            node.previous.next = node.next;
+        } else if (wheels[node.level][node.slot] == node) {
+            wheels[node.level][node.slot] = node.next;
+        }
+        if (node.next != null) {
+            node.next.previous = node.previous;
+        }
+        node.previous = null;
+        node.next = null;
+    }
+}
@@ -4,89 +4,340 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbInterface;
 import android.hardware.usb.UsbManager;
 import android.content.SharedPreferences;
 import android.os.Build;
 import android.util.Log;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class USBReceiver extends BroadcastReceiver {
     private static final String PREFS_NAME = "UsbAuthPrefs";
     private static final String PROTECTION_ENABLED_KEY = "protection_enabled";
     private static final String WHITELIST_KEY = "whitelist_devices";
+    private static final String RULES_KEY = "whitelist_rules";
+    static final String MAX_DEVICES_KEY = "whitelist_max_devices";
+    static final String MAX_AGE_KEY = "whitelist_max_age_ms";
+    private static final String USAGE_SINCE_KEY = "whitelist_usage_since";
+    // Sin límites salvo que un administrador los configure: una lista aprovisionada no se recorta
+    static final int DEFAULT_MAX_DEVICES = 0;
+    static final long DEFAULT_MAX_AGE_MILLIS = 0;
+    // Las conexiones se acumulan en memoria y se vuelcan como mucho una vez por este plazo
+    private static final long USAGE_FLUSH_DELAY_MS = 60 * 1000;
+    private static final String WHITELIST_LOG_FILE = "whitelist.log";
+    private static final String WHITELIST_SNAPSHOT_FILE = "whitelist.snapshot";
     private static final String TAG = "USBReceiver";
 
+    // Serializa las altas y bajas para que el log en disco vea el mismo orden que la caché.
+    // Las lecturas de la caché no lo toman nunca.
+    private static final Object WHITELIST_LOCK = new Object();
+    private static final int[] NO_CLASSES = new int[0];
+    // Altas y bajas pedidas desde la interfaz (cada una hace fsync) y escritura de la instantánea
+    private static final ExecutorService WHITELIST_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "whitelist-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicBoolean snapshotPending = new AtomicBoolean();
+    private static final WhitelistUsage WHITELIST_USAGE = new WhitelistUsage();
+    private static final ScheduledExecutorService USAGE_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "whitelist-usage");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final AtomicBoolean usageFlushPending = new AtomicBoolean();
+
+    private static WhitelistLog whitelistLog;
+    // El log cifrado no se pudo leer con la clave actual: se bloquea todo sin tocar los ficheros
+    private static volatile boolean whitelistLocked;
+    private static WhitelistSnapshot coldSnapshot;
+    // Ruta de decisión ya cargada por prewarm() en este proceso
+    private static volatile boolean prewarmed;
+
+    /**
+     * Lista blanca cargada por loadWhitelistAsync(); se invoca en el hilo de la lista blanca
+     */
+    public interface WhitelistCallback {
+        void onLoaded(WhitelistStore.Snapshot snapshot);
+    }
+
+    /**
+     * Resultado de una operación en segundo plano sobre la lista blanca
+     */
+    public interface ResultCallback {
+        void onResult(boolean success);
+    }
+
     /**
-     * Recibe eventos de conexión USB y verifica si el dispositivo necesita autenticación
+     * Recibe eventos de conexión USB y delega la decisión en AttachPipeline,
+     * fuera del hilo principal. Las entregas repetidas las descarta AttachIntake.
      */
     @Override
     public void onReceive(Context context, Intent intent) {
         String action = intent.getAction();
 
         if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(action)) {
-            SharedPreferences settings = context.getSharedPreferences(PREFS_NAME, 0);
-            boolean protectionEnabled = settings.getBoolean(PROTECTION_ENABLED_KEY, false);
-
-            if (protectionEnabled) {
-                // Obtener información del dispositivo conectado
-                UsbManager usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
-                UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
-
-                if (device != null) {
-                    // Generar ID único para el dispositivo conectado
-                    String deviceId = generateDeviceId(device);
-                    Log.d(TAG, "Dispositivo detectado: " + deviceId);
-
-                    // Verificar si el dispositivo está en la lista blanca
-                    if (!isDeviceWhitelisted(context, deviceId)) {
-                        // No está en lista blanca, lanzar diálogo de contraseña
-                        Intent dialogIntent = new Intent(context, PasswordDialogActivity.class);
-                        dialogIntent.putExtra("device_id", deviceId);
-                        dialogIntent.putExtra("device_name", getDeviceName(device));
-                        dialogIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                        context.startActivity(dialogIntent);
-                    } else {
-                        Log.d(TAG, "Dispositivo en lista blanca, acceso permitido");
-                        // El dispositivo está en lista blanca, permitir acceso automáticamente
-                        // Usar la clase MainActivity para acceder al método nativo
-                        MainActivity mainActivity = new MainActivity();
-                        mainActivity.allowUsbDataTransfer();
-                    }
-                }
+            UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+
+            // El receptor puede estar registrado hasta tres veces: cada conexión se evalúa una sola vez
+            if (device != null && UsbAuthService.getAttachIntake()
+                    .accept(device.getVendorId(), device.getProductId(), device.getDeviceId())) {
+                long attachNanos = AttachMetrics.start();
+                // Mantener vivo el broadcast hasta que termine la decisión en segundo plano
+                PendingResult pendingResult = goAsync();
+                AttachPipeline.getInstance().submit(context, device, pendingResult, attachNanos);
             }
+        } else if (Intent.ACTION_BOOT_COMPLETED.equals(action)) {
+            handleBoot(context);
+        }
+    }
+
+    /**
+     * Tras el arranque: inicia UsbAuthService y precalienta la ruta de decisión en segundo
+     * plano, para que la primera conexión no pague la carga en frío
+     */
+    private void handleBoot(Context context) {
+        if (!PolicyStore.get(context).isProtectionEnabled()) {
+            return;
         }
+
+        context.startService(new Intent(context, UsbAuthService.class));
+
+        Context appContext = context.getApplicationContext();
+        PendingResult pendingResult = goAsync();
+        Thread thread = new Thread(() -> {
+            try {
+                prewarm(appContext);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error al precalentar la ruta de decisión", e);
+            } finally {
+                pendingResult.finish();
+            }
+        }, "usb-prewarm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Carga todo lo que necesita la primera decisión: política (preferencias y reglas),
+     * índice de la lista blanca, biblioteca nativa, hilos de decisión y registro de auditoría
+     */
+    static void prewarm(Context context) {
+        long start = AttachMetrics.start();
+        PolicyStore.get(context);
+        WhitelistKeys.getCipher(context);
+        WhitelistCache.getInstance(context);
+        UsbNative.load();
+        AttachPipeline.getInstance();
+        EnforcementController.getInstance();
+        AuditLog.getInstance(context);
+        UsbAuthService.getPendingAuthScheduler(context);
+        prewarmed = true;
+        AttachMetrics.record(AttachMetrics.Stage.PREWARM, start);
+        Log.d(TAG, "Ruta de decisión precalentada en " + (AttachMetrics.start() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Decide sobre un dispositivo conectado. Se ejecuta en un hilo de AttachPipeline.
+     * attachNanos es el instante de llegada del broadcast, para las métricas de latencia.
+     */
+    static void handleAttach(Context context, UsbDevice device, long attachNanos) {
+        // Una lectura volátil de la política publicada, sin tocar las preferencias
+        long prefsStart = AttachMetrics.start();
+        PolicySnapshot policy = PolicyStore.get(context);
+        AttachMetrics.record(AttachMetrics.Stage.PREFS_READ, prefsStart);
+
+        if (!policy.isProtectionEnabled()) {
+            return;
+        }
+
+        // Huella del dispositivo: sin construir el ID de texto en la ruta habitual
+        int vendorId = device.getVendorId();
+        int productId = device.getProductId();
+        String serialNumber = getSerialNumber(device);
+        long fingerprint = DeviceFingerprint.of(vendorId, productId, serialNumber);
+
+        // Nueva conexión física: el estado de bloqueo anterior del dispositivo ya no vale
+        EnforcementController.getInstance().onAttached(fingerprint);
+
+        AuditLog audit = AuditLog.getInstance(context);
+        audit.record(AuditLog.Event.ATTACH, vendorId, productId, serialNumber);
+
+        // Sin acceso a la lista blanca cifrada no se decide nada: bloqueo sin diálogo
+        if (isWhitelistLocked(context)) {
+            Log.w(TAG, "Lista blanca bloqueada, acceso bloqueado");
+            audit.record(AuditLog.Event.WHITELIST_LOCKED, vendorId, productId, serialNumber);
+            applyDecision(fingerprint, false, attachNanos);
+            return;
+        }
+
+        // Las reglas por familia se evalúan antes que la lista exacta; una denegación gana siempre
+        long lookupStart = AttachMetrics.start();
+        WhitelistRuleEngine rules = policy.getRules();
+        if (!rules.isEmpty()) {
+            int[] classes = rules.usesClasses() ? getUsbClasses(device) : NO_CLASSES;
+            WhitelistRuleEngine.Decision decision =
+                    rules.evaluate(vendorId, productId, serialNumber, classes, classes.length);
+
+            if (decision == WhitelistRuleEngine.Decision.DENY) {
+                AttachMetrics.record(AttachMetrics.Stage.LOOKUP, lookupStart);
+                Log.d(TAG, "Dispositivo denegado por regla, acceso bloqueado");
+                audit.record(AuditLog.Event.RULE_DENY, vendorId, productId, serialNumber);
+                applyDecision(fingerprint, false, attachNanos);
+                return;
+            }
+            if (decision == WhitelistRuleEngine.Decision.ALLOW) {
+                AttachMetrics.record(AttachMetrics.Stage.LOOKUP, lookupStart);
+                Log.d(TAG, "Dispositivo permitido por regla");
+                audit.record(AuditLog.Event.RULE_ALLOW, vendorId, productId, serialNumber);
+                applyDecision(fingerprint, true, attachNanos);
+                return;
+            }
+        }
+
+        // Verificar si el dispositivo está en la lista blanca
+        boolean whitelisted = isDeviceWhitelisted(context, fingerprint, vendorId, productId, serialNumber);
+        AttachMetrics.record(AttachMetrics.Stage.LOOKUP, lookupStart);
+
+        if (!whitelisted && SessionGrants.getInstance().isGranted(fingerprint)) {
+            // Reconexión dentro del permiso de sesión: sin diálogo
+            Log.d(TAG, "Dispositivo con permiso de sesión, acceso permitido");
+            audit.record(AuditLog.Event.SESSION_GRANT, vendorId, productId, serialNumber);
+            applyDecision(fingerprint, true, attachNanos);
+        } else if (!whitelisted) {
+            String deviceId = DeviceFingerprint.toDeviceId(vendorId, productId, serialNumber);
+            Log.d(TAG, "Dispositivo detectado: " + deviceId);
+            audit.record(AuditLog.Event.PROMPT, deviceId);
+
+            // No está en lista blanca: bloquear ya y agrupar con otras conexiones
+            // cercanas en un único diálogo de contraseña
+            requestAuthentication(context, fingerprint, deviceId, getDeviceName(device), attachNanos);
+        } else {
+            Log.d(TAG, "Dispositivo en lista blanca, acceso permitido");
+            audit.record(AuditLog.Event.WHITELIST_HIT, vendorId, productId, serialNumber);
+            // El dispositivo está en lista blanca, permitir acceso automáticamente
+            applyDecision(fingerprint, true, attachNanos);
+            recordWhitelistHit(context, fingerprint, vendorId, productId, serialNumber);
+        }
+    }
+
+    /**
+     * Anota la conexión en WhitelistUsage (solo memoria) y programa el volcado en lote
+     */
+    private static void recordWhitelistHit(Context context, long fingerprint,
+                                           int vendorId, int productId, String serialNumber) {
+        // Con la caché cargada se reutiliza el ID guardado en lugar de construirlo
+        WhitelistedDevice entry = WhitelistCache.isLoaded()
+                ? WhitelistCache.getInstance(context).find(fingerprint, vendorId, productId, serialNumber)
+                : null;
+        String deviceId = entry != null
+                ? entry.getId()
+                : DeviceFingerprint.toDeviceId(vendorId, productId, serialNumber);
+        WHITELIST_USAGE.record(deviceId, System.currentTimeMillis());
+        scheduleUsageFlush(context, USAGE_FLUSH_DELAY_MS);
+    }
+
+    /**
+     * Uso de los dispositivos de la lista blanca en este proceso
+     */
+    static WhitelistUsage getWhitelistUsage() {
+        return WHITELIST_USAGE;
+    }
+
+    /**
+     * Aplica la decisión a través de EnforcementController y registra la latencia total
+     */
+    private static void applyDecision(long fingerprint, boolean allow, long attachNanos) {
+        if (allow) {
+            EnforcementController.getInstance().allow(fingerprint);
+        } else {
+            EnforcementController.getInstance().block(fingerprint);
+        }
+        AttachMetrics.record(AttachMetrics.Stage.ATTACH_TO_DECISION, attachNanos);
+        AttachMetrics.recordFirstDecision(attachNanos, prewarmed);
+    }
+
+    /**
+     * Solicita contraseña para el dispositivo sin consultar la lista blanca
+     */
+    static void promptForDevice(Context context, UsbDevice device, long attachNanos) {
+        if (PolicyStore.get(context).isProtectionEnabled()) {
+            String deviceId = generateDeviceId(device);
+            long fingerprint = DeviceFingerprint.of(deviceId);
+            EnforcementController.getInstance().onAttached(fingerprint);
+            requestAuthentication(context, fingerprint, deviceId, getDeviceName(device), attachNanos);
+        }
+    }
+
+    /**
+     * Bloquea el dispositivo, abre su solicitud con plazo en el planificador y programa el diálogo
+     */
+    private static void requestAuthentication(Context context, long fingerprint, String deviceId,
+                                              String deviceName, long attachNanos) {
+        EnforcementController.getInstance().block(fingerprint);
+        UsbAuthService.getPendingAuthScheduler(context).submit(deviceId, fingerprint, deviceName);
+        AttachMetrics.recordFirstDecision(attachNanos, prewarmed);
+        AttachCoalescer.getInstance().enqueue(context, deviceId, deviceName, attachNanos);
     }
 
     /**
      * Genera un ID único para el dispositivo USB conectado
      */
-    private String generateDeviceId(UsbDevice device) {
-        StringBuilder builder = new StringBuilder();
-        builder.append(device.getVendorId())
-                .append(":")
-                .append(device.getProductId())
-                .append(":");
+    static String generateDeviceId(UsbDevice device) {
+        return DeviceFingerprint.toDeviceId(device.getVendorId(), device.getProductId(),
+                getSerialNumber(device));
+    }
 
-        // Intentar obtener número de serie si está disponible
+    /**
+     * Número de serie del dispositivo, o null si no está disponible
+     */
+    private static String getSerialNumber(UsbDevice device) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            String serialNumber = device.getSerialNumber();
-            if (serialNumber != null) {
-                builder.append(serialNumber);
-            }
+            return device.getSerialNumber();
         }
+        return null;
+    }
 
-        return builder.toString();
+    /**
+     * Pares (clase << 8 | subclase) del dispositivo y de cada una de sus interfaces
+     */
+    private static int[] getUsbClasses(UsbDevice device) {
+        int interfaceCount = device.getInterfaceCount();
+        int[] classes = new int[interfaceCount + 1];
+        classes[0] = (device.getDeviceClass() << 8) | (device.getDeviceSubclass() & 0xFF);
+        for (int i = 0; i < interfaceCount; i++) {
+            UsbInterface usbInterface = device.getInterface(i);
+            classes[i + 1] = (usbInterface.getInterfaceClass() << 8)
+                    | (usbInterface.getInterfaceSubclass() & 0xFF);
+        }
+        return classes;
     }
 
     /**
      * Obtiene un nombre descriptivo para el dispositivo
      */
-    private String getDeviceName(UsbDevice device) {
+    static String getDeviceName(UsbDevice device) {
         String deviceName = device.getDeviceName();
 
         // Intentar obtener nombre más descriptivo si está disponible
@@ -107,21 +358,109 @@ public class USBReceiver extends BroadcastReceiver {
      * Verifica si un dispositivo está en la lista blanca
      */
     public static boolean isDeviceWhitelisted(Context context, String deviceId) {
-        List<WhitelistedDevice> whitelistedDevices = getWhitelistedDevices(context);
+        // En un proceso recién iniciado, responder desde la instantánea si está al día
+        if (!WhitelistCache.isLoaded()) {
+            WhitelistSnapshot snapshot = getColdSnapshot(context);
+            if (snapshot != null) {
+                return snapshot.contains(deviceId);
+            }
+        }
+        return WhitelistCache.getInstance(context).contains(deviceId);
+    }
 
-        for (WhitelistedDevice device : whitelistedDevices) {
-            if (device.getId().equals(deviceId)) {
-                return true;
+    /**
+     * Variante sin asignaciones para la ruta de conexión: busca por huella y confirma
+     * comparando los campos del descriptor con el ID guardado
+     */
+    static boolean isDeviceWhitelisted(Context context, long fingerprint,
+                                       int vendorId, int productId, String serialNumber) {
+        if (!WhitelistCache.isLoaded()) {
+            WhitelistSnapshot snapshot = getColdSnapshot(context);
+            if (snapshot != null) {
+                return snapshot.contains(fingerprint, vendorId, productId, serialNumber);
             }
         }
+        return WhitelistCache.getInstance(context).contains(fingerprint, vendorId, productId, serialNumber);
+    }
 
-        return false;
+    /**
+     * Devuelve la instantánea mapeada solo si coincide con la generación y longitud del log
+     */
+    private static synchronized WhitelistSnapshot getColdSnapshot(Context context) {
+        if (coldSnapshot == null) {
+            long parseStart = AttachMetrics.start();
+            coldSnapshot = WhitelistSnapshot.open(new File(context.getFilesDir(), WHITELIST_SNAPSHOT_FILE),
+                    WhitelistKeys.getCipher(context));
+            AttachMetrics.record(AttachMetrics.Stage.WHITELIST_PARSE, parseStart);
+            if (coldSnapshot == null) {
+                return null;
+            }
+        }
+
+        File logFile = new File(context.getFilesDir(), WHITELIST_LOG_FILE);
+        if (!coldSnapshot.isCurrent(WhitelistLog.readGeneration(logFile), logFile.length())) {
+            coldSnapshot = null;
+        }
+        return coldSnapshot;
     }
 
     /**
      * Obtiene la lista de dispositivos en lista blanca almacenados
      */
     public static List<WhitelistedDevice> getWhitelistedDevices(Context context) {
+        return WhitelistCache.getInstance(context).getDevices();
+    }
+
+    /**
+     * Carga la lista blanca desde el log binario. Solo la usa la caché al cargarse.
+     * En la primera ejecución migra la lista JSON de las preferencias al log.
+     */
+    static List<WhitelistedDevice> loadWhitelistedDevices(Context context) {
+        long parseStart = AttachMetrics.start();
+        WhitelistLog log = getWhitelistLog(context);
+        boolean migrate = !log.exists();
+
+        try {
+            if (migrate) {
+                // El log aparece con un rename atómico, así que una migración interrumpida se repite
+                log.rewrite(loadLegacyWhitelist(context));
+            }
+            List<WhitelistedDevice> devices = log.open(WHITELIST_USAGE);
+            if (migrate) {
+                context.getSharedPreferences(PREFS_NAME, 0).edit().remove(WHITELIST_KEY).apply();
+            }
+            scheduleSnapshotWrite(context);
+            // Aplicar los límites de tamaño y antigüedad una vez por proceso
+            scheduleUsageFlush(context, USAGE_FLUSH_DELAY_MS);
+            AttachMetrics.record(AttachMetrics.Stage.WHITELIST_PARSE, parseStart);
+            return devices;
+        } catch (WhitelistLog.UnreadableLogException e) {
+            // Puede ser un fallo pasajero del Keystore: el log se conserva y, mientras tanto,
+            // no se permite ningún dispositivo (ver isWhitelistLocked)
+            Log.e(TAG, "Log de lista blanca ilegible con la clave actual, lista bloqueada", e);
+            whitelistLocked = true;
+            WHITELIST_USAGE.clear();
+            AuditLog.getInstance(context).record(AuditLog.Event.WHITELIST_LOCKED, null);
+            return new ArrayList<>();
+        } catch (IOException e) {
+            Log.e(TAG, "Error al leer el log de lista blanca", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Indica si la lista blanca cifrada no se pudo leer en este proceso (claves o log).
+     * Mientras tanto se bloquea toda conexión y no se escribe ni el log ni la instantánea.
+     * El log se comprueba al cargar la caché, que prewarm() hace al arrancar el proceso.
+     */
+    static boolean isWhitelistLocked(Context context) {
+        return WhitelistKeys.isLocked(context) || whitelistLocked;
+    }
+
+    /**
+     * Lee la lista blanca en formato JSON de versiones anteriores
+     */
+    private static List<WhitelistedDevice> loadLegacyWhitelist(Context context) {
         SharedPreferences settings = context.getSharedPreferences(PREFS_NAME, 0);
         String jsonWhitelist = settings.getString(WHITELIST_KEY, "");
 
@@ -129,65 +468,365 @@ public class USBReceiver extends BroadcastReceiver {
             return new ArrayList<>();
         }
 
+        try {
+            return WhitelistCodec.read(new StringReader(jsonWhitelist));
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error al deserializar lista blanca", e);
+            return new ArrayList<>();
+        }
+    }
+
+    private static synchronized WhitelistLog getWhitelistLog(Context context) {
+        if (whitelistLog == null) {
+            whitelistLog = new WhitelistLog(new File(context.getFilesDir(), WHITELIST_LOG_FILE),
+                    WhitelistKeys.getCipher(context));
+            Context appContext = context.getApplicationContext();
+            whitelistLog.setCompactionListener(() -> scheduleSnapshotWrite(appContext));
+        }
+        return whitelistLog;
+    }
+
+    /**
+     * Obtiene las reglas de política almacenadas
+     */
+    public static List<WhitelistRule> getWhitelistRules(Context context) {
+        SharedPreferences settings = context.getSharedPreferences(PREFS_NAME, 0);
+        return parseWhitelistRules(settings.getString(RULES_KEY, ""));
+    }
+
+    /**
+     * Deserializa las reglas guardadas en JSON; una lista vacía si no hay o son ilegibles
+     */
+    static List<WhitelistRule> parseWhitelistRules(String jsonRules) {
+        if (jsonRules.isEmpty()) {
+            return new ArrayList<>();
+        }
+
         try {
             Gson gson = new Gson();
-            Type type = new TypeToken<List<WhitelistedDevice>>(){}.getType();
-            return gson.fromJson(jsonWhitelist, type);
+            Type type = new TypeToken<List<WhitelistRule>>(){}.getType();
+            List<WhitelistRule> rules = gson.fromJson(jsonRules, type);
+            return rules != null ? rules : new ArrayList<>();
         } catch (Exception e) {
-            Log.e(TAG, "Error al deserializar lista blanca", e);
+            Log.e(TAG, "Error al deserializar reglas de lista blanca", e);
             return new ArrayList<>();
         }
     }
 
+    /**
+     * Guarda las reglas de política y recompila la tabla de decisión
+     */
+    public static void setWhitelistRules(Context context, List<WhitelistRule> rules) {
+        SharedPreferences settings = context.getSharedPreferences(PREFS_NAME, 0);
+        SharedPreferences.Editor editor = settings.edit();
+
+        Gson gson = new Gson();
+        editor.putString(RULES_KEY, gson.toJson(rules));
+        editor.apply();
+
+        // Recompilar y publicar ya, sin esperar al aviso de cambio de las preferencias
+        PolicyStore.refresh(context);
+    }
+
     /**
      * Añade un dispositivo a la lista blanca
      */
     public static void addDeviceToWhitelist(Context context, String deviceId, String deviceName) {
-        List<WhitelistedDevice> whitelistedDevices = getWhitelistedDevices(context);
+        WhitelistCache cache = WhitelistCache.getInstance(context);
+
+        synchronized (WHITELIST_LOCK) {
+            // Añadir nuevo dispositivo si no estaba ya en la lista
+            WhitelistedDevice newDevice = new WhitelistedDevice(deviceId, deviceName, System.currentTimeMillis());
+            if (!cache.add(newDevice)) {
+                return;
+            }
 
-        // Verificar si ya existe
-        for (WhitelistedDevice device : whitelistedDevices) {
-            if (device.getId().equals(deviceId)) {
-                // Ya está en la lista
+            // Un único registro anexado en lugar de reescribir toda la lista
+            try {
+                getWhitelistLog(context).appendAdd(newDevice);
+            } catch (IOException e) {
+                Log.e(TAG, "Error al guardar dispositivo en lista blanca", e);
+                cache.remove(deviceId);
                 return;
             }
         }
+        scheduleSnapshotWrite(context);
+        // Puede haber superado el tamaño máximo
+        scheduleUsageFlush(context, 0);
+    }
 
-        // Añadir nuevo dispositivo
-        WhitelistedDevice newDevice = new WhitelistedDevice(deviceId, deviceName, System.currentTimeMillis());
-        whitelistedDevices.add(newDevice);
+    /**
+     * Añade los dispositivos (ID → nombre) fuera del hilo llamante y después ejecuta onDone
+     * en el hilo de la lista blanca. Para llamar desde el hilo principal.
+     */
+    public static void addDevicesToWhitelistAsync(Context context, Map<String, String> devices, Runnable onDone) {
+        Context appContext = context.getApplicationContext();
+        Map<String, String> copy = new LinkedHashMap<>(devices);
+        WHITELIST_EXECUTOR.execute(() -> {
+            for (Map.Entry<String, String> device : copy.entrySet()) {
+                addDeviceToWhitelist(appContext, device.getKey(), device.getValue());
+            }
+            onDone.run();
+        });
+    }
 
-        // Guardar la lista actualizada
-        saveWhitelistedDevices(context, whitelistedDevices);
+    /**
+     * Elimina el dispositivo fuera del hilo llamante y después pasa el resultado a callback
+     * en el hilo de la lista blanca. Para llamar desde el hilo principal.
+     */
+    public static void removeDeviceFromWhitelistAsync(Context context, String deviceId, ResultCallback callback) {
+        Context appContext = context.getApplicationContext();
+        WHITELIST_EXECUTOR.execute(() -> callback.onResult(removeDeviceFromWhitelist(appContext, deviceId)));
     }
 
     /**
-     * Elimina un dispositivo de la lista blanca
+     * Carga la lista blanca fuera del hilo llamante (la primera vez reproduce el log) y pasa
+     * la instantánea a callback en el hilo de la lista blanca. Para llamar desde el hilo principal.
      */
-    public static void removeDeviceFromWhitelist(Context context, String deviceId) {
-        List<WhitelistedDevice> whitelistedDevices = getWhitelistedDevices(context);
-        List<WhitelistedDevice> updatedList = new ArrayList<>();
+    public static void loadWhitelistAsync(Context context, WhitelistCallback callback) {
+        Context appContext = context.getApplicationContext();
+        WHITELIST_EXECUTOR.execute(() -> callback.onLoaded(WhitelistCache.getInstance(appContext).snapshot()));
+    }
 
-        for (WhitelistedDevice device : whitelistedDevices) {
-            if (!device.getId().equals(deviceId)) {
-                updatedList.add(device);
+    /**
+     * Elimina un dispositivo de la lista blanca. Devuelve false si la baja no se pudo guardar;
+     * en ese caso el dispositivo sigue en la lista.
+     */
+    public static boolean removeDeviceFromWhitelist(Context context, String deviceId) {
+        WhitelistCache cache = WhitelistCache.getInstance(context);
+
+        synchronized (WHITELIST_LOCK) {
+            WhitelistedDevice device = cache.snapshot().get(deviceId);
+            if (device == null || !cache.remove(deviceId)) {
+                return true;
+            }
+            WhitelistUsage.Entry usage = WHITELIST_USAGE.get(deviceId);
+            WHITELIST_USAGE.remove(deviceId);
+            try {
+                getWhitelistLog(context).appendRemove(deviceId);
+            } catch (IOException e) {
+                Log.e(TAG, "Error al eliminar dispositivo de lista blanca", e);
+                // El log aún lo tiene: deshacer para no perderlo al reiniciar sin avisar
+                restoreWhitelistEntry(cache, device, usage);
+                return false;
             }
         }
+        scheduleSnapshotWrite(context);
+        return true;
+    }
 
-        saveWhitelistedDevices(context, updatedList);
+    /**
+     * Vuelve a poner en la caché y en el uso un dispositivo cuya baja no llegó al log
+     */
+    private static void restoreWhitelistEntry(WhitelistCache cache, WhitelistedDevice device,
+                                              WhitelistUsage.Entry usage) {
+        cache.add(device);
+        if (usage != null) {
+            WHITELIST_USAGE.load(usage);
+            // Puede que no estuviera volcado todavía
+            WHITELIST_USAGE.markDirty(Collections.singletonList(usage));
+        }
     }
 
     /**
-     * Guarda la lista de dispositivos en las preferencias
+     * Importa dispositivos en bloque desde CSV o JSON lines. Con replace la lista resultante
+     * sustituye a la actual; sin él se añade a ella. El log se reescribe de una vez y la
+     * caché se actualiza con una única publicación; si la escritura falla no cambia nada.
+     * Hace E/S: no llamar desde el hilo principal.
      */
-    private static void saveWhitelistedDevices(Context context, List<WhitelistedDevice> devices) {
+    public static WhitelistTransfer.Result importWhitelist(Context context, Reader reader,
+                                                           WhitelistTransfer.Format format,
+                                                           boolean replace) throws IOException {
+        WhitelistCache cache = WhitelistCache.getInstance(context);
+        if (isWhitelistLocked(context)) {
+            // Reescribir el log sustituiría la lista cifrada que no se pudo leer
+            throw new IOException("Lista blanca bloqueada: no se pudo leer con la clave actual");
+        }
+        WhitelistTransfer.Result result;
+
+        synchronized (WHITELIST_LOCK) {
+            // Se acumula todo antes de escribir: O(n) en memoria, lo mismo que ya ocupa la caché
+            // que se sustituye al final. A cambio, un fichero que falla a mitad de lectura no
+            // toca el log y el log se reescribe una sola vez, con un solo fsync.
+            final List<WhitelistedDevice> devices = new ArrayList<>();
+            Set<String> seenIds = new HashSet<>();
+            if (!replace) {
+                for (WhitelistedDevice device : cache.snapshot().devices()) {
+                    devices.add(device);
+                    seenIds.add(device.getId());
+                }
+            }
+
+            result = WhitelistTransfer.read(reader, format, seenIds, System.currentTimeMillis(),
+                    new WhitelistCodec.DeviceSink() {
+                        @Override
+                        public void accept(WhitelistedDevice device) {
+                            devices.add(device);
+                        }
+                    });
+
+            getWhitelistLog(context).rewrite(devices, WHITELIST_USAGE);
+            cache.replaceAll(devices);
+            WHITELIST_USAGE.retainAll(devices);
+        }
+
+        Log.d(TAG, "Importación de lista blanca: " + result);
+        scheduleSnapshotWrite(context);
+        scheduleUsageFlush(context, 0);
+        return result;
+    }
+
+    /**
+     * Exporta la lista blanca actual en CSV o JSON lines. Devuelve el número de registros.
+     */
+    public static int exportWhitelist(Context context, Writer writer, WhitelistTransfer.Format format)
+            throws IOException {
+        // La instantánea es inmutable: se recorre sin bloquear a los escritores
+        return WhitelistTransfer.write(writer, format, WhitelistCache.getInstance(context).snapshot().devices());
+    }
+
+    /**
+     * Programa la reescritura de la instantánea en segundo plano, agrupando peticiones seguidas
+     */
+    private static void scheduleSnapshotWrite(Context context) {
+        if (!snapshotPending.compareAndSet(false, true)) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        WHITELIST_EXECUTOR.execute(() -> {
+            snapshotPending.set(false);
+            writeSnapshot(appContext);
+        });
+    }
+
+    /**
+     * Programa el volcado del uso y la expulsión de dispositivos, agrupando peticiones seguidas.
+     * Si ya hay uno programado, las nuevas conexiones se incluyen en él.
+     */
+    private static void scheduleUsageFlush(Context context, long delayMillis) {
+        if (!usageFlushPending.compareAndSet(false, true)) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        USAGE_EXECUTOR.schedule(() -> {
+            usageFlushPending.set(false);
+            flushUsage(appContext);
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Escribe el uso pendiente con un solo anexado y expulsa los dispositivos que sobran
+     */
+    private static void flushUsage(Context context) {
+        // Carga la caché (y con ella el uso guardado) si la conexión se decidió en frío
+        WhitelistCache cache = WhitelistCache.getInstance(context);
+
+        List<WhitelistUsage.Entry> entries = WHITELIST_USAGE.drainDirty();
+        if (!entries.isEmpty()) {
+            synchronized (WHITELIST_LOCK) {
+                try {
+                    getWhitelistLog(context).appendUsage(entries);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error al guardar el uso de la lista blanca", e);
+                    WHITELIST_USAGE.markDirty(entries);
+                }
+            }
+            scheduleSnapshotWrite(context);
+        }
+
+        PolicySnapshot policy = PolicyStore.get(context);
+        long now = System.currentTimeMillis();
+        List<String> evicted = WHITELIST_USAGE.selectEvictions(cache.snapshot().devices(),
+                policy.getMaxWhitelistDevices(), policy.getWhitelistMaxAgeMillis(), now,
+                getUsageTrackingSince(context, now));
+        if (evicted.isEmpty()) {
+            return;
+        }
+
+        List<String> removed = removeDevicesFromWhitelist(context, evicted);
+        AuditLog audit = AuditLog.getInstance(context);
+        for (String deviceId : removed) {
+            audit.record(AuditLog.Event.WHITELIST_EVICT, deviceId);
+        }
+        Log.d(TAG, "Dispositivos expulsados de la lista blanca: " + removed.size());
+    }
+
+    /**
+     * Elimina varios dispositivos con una sola publicación en la caché y un solo anexado
+     * al log. Devuelve los que estaban en la lista, o una lista vacía si el log no pudo
+     * guardar las bajas; en ese caso no se elimina ninguno.
+     */
+    private static List<String> removeDevicesFromWhitelist(Context context, List<String> deviceIds) {
+        WhitelistCache cache = WhitelistCache.getInstance(context);
+        List<String> removed;
+
+        synchronized (WHITELIST_LOCK) {
+            WhitelistStore.Snapshot before = cache.snapshot();
+            removed = cache.removeAll(deviceIds);
+            if (removed.isEmpty()) {
+                return removed;
+            }
+            List<WhitelistUsage.Entry> usage = new ArrayList<>(removed.size());
+            for (String deviceId : removed) {
+                usage.add(WHITELIST_USAGE.get(deviceId));
+                WHITELIST_USAGE.remove(deviceId);
+            }
+            try {
+                getWhitelistLog(context).appendRemoveAll(removed);
+            } catch (IOException e) {
+                Log.e(TAG, "Error al eliminar dispositivos de lista blanca", e);
+                // Ninguna baja llegó al log: se restauran todas
+                for (int i = 0; i < removed.size(); i++) {
+                    restoreWhitelistEntry(cache, before.get(removed.get(i)), usage.get(i));
+                }
+                return new ArrayList<>();
+            }
+        }
+        scheduleSnapshotWrite(context);
+        return removed;
+    }
+
+    /**
+     * Instante desde el que se registra el uso. Los dispositivos sin conexiones anotadas
+     * cuentan como usados entonces, para no expulsar tras actualizar los que se usaban antes.
+     */
+    private static long getUsageTrackingSince(Context context, long now) {
         SharedPreferences settings = context.getSharedPreferences(PREFS_NAME, 0);
-        SharedPreferences.Editor editor = settings.edit();
+        long since = settings.getLong(USAGE_SINCE_KEY, 0);
+        if (since == 0) {
+            since = now;
+            settings.edit().putLong(USAGE_SINCE_KEY, since).apply();
+        }
+        return since;
+    }
 
-        Gson gson = new Gson();
-        String jsonWhitelist = gson.toJson(devices);
+    private static void writeSnapshot(Context context) {
+        if (isWhitelistLocked(context)) {
+            return;
+        }
+        List<WhitelistedDevice> devices;
+        long generation;
+        long length;
+        synchronized (WHITELIST_LOCK) {
+            WhitelistLog log = getWhitelistLog(context);
+            devices = WhitelistCache.getInstance(context).getDevices();
+            generation = log.getGeneration();
+            length = log.getLength();
+        }
 
-        editor.putString(WHITELIST_KEY, jsonWhitelist);
-        editor.apply();
+        File file = new File(context.getFilesDir(), WHITELIST_SNAPSHOT_FILE);
+        RecordCipher cipher = WhitelistKeys.getCipher(context);
+        WhitelistSnapshot current = WhitelistSnapshot.open(file, cipher);
+        if (current != null && current.isCurrent(generation, length)) {
+            return;
+        }
+
+        try {
+            if (!WhitelistSnapshot.write(file, devices, generation, length, cipher)) {
+                Log.w(TAG, "Lista blanca con IDs demasiado largos, sin instantánea");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error al escribir la instantánea de lista blanca", e);
+        }
     }
 }
\ No newline at end of file
@@ -1,17 +1,79 @@
 package com.example.cipherlock;
 
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.hardware.usb.UsbManager;
 import android.os.IBinder;
+import android.util.Log;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
 public class UsbAuthService extends Service {
+    private static final String TAG = "UsbAuthService";
+    private static final long AUTH_TIMEOUT_MILLIS = 30000; // 30 segundos por intento
+    private static final int AUTH_MAX_RETRIES = 1;
+    private static final int AUTH_MAX_FAILURES = 5;
+
+    private static final AttachIntake ATTACH_INTAKE = new AttachIntake();
+
+    private static PendingAuthScheduler pendingAuthScheduler;
+
     private USBReceiver usbReceiver;
 
+    /**
+     * Entrada única de eventos de conexión, compartida por todos los registros de USBReceiver
+     */
+    public static AttachIntake getAttachIntake() {
+        return ATTACH_INTAKE;
+    }
+
+    /**
+     * Planificador de autenticaciones pendientes del proceso. Lo crea el servicio al arrancar
+     * y vive con el proceso, haya o no diálogo visible.
+     */
+    public static synchronized PendingAuthScheduler getPendingAuthScheduler(Context context) {
+        if (pendingAuthScheduler == null) {
+            pendingAuthScheduler = new PendingAuthScheduler(AUTH_TIMEOUT_MILLIS, AUTH_MAX_RETRIES,
+                    AUTH_MAX_FAILURES, new PendingAuthActions(context.getApplicationContext()));
+        }
+        return pendingAuthScheduler;
+    }
+
+    /**
+     * Reintentos y bloqueos definitivos del planificador, sin depender de ninguna actividad
+     */
+    private static final class PendingAuthActions implements PendingAuthScheduler.Callback {
+        private final Context context;
+
+        PendingAuthActions(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public void onRetry(String deviceId, String deviceName) {
+            Log.d(TAG, "Autenticación sin diálogo, se vuelve a solicitar: " + deviceId);
+            AttachCoalescer.getInstance().enqueue(context, deviceId, deviceName, 0);
+        }
+
+        @Override
+        public void onFinalBlock(String deviceId, long fingerprint, PendingAuthScheduler.Outcome outcome) {
+            Log.d(TAG, "Autenticación cerrada (" + outcome + "), acceso bloqueado: " + deviceId);
+            EnforcementController.getInstance().block(fingerprint);
+            if (outcome == PendingAuthScheduler.Outcome.TIMEOUT) {
+                AuditLog.getInstance(context).record(AuditLog.Event.TIMEOUT, deviceId);
+            } else if (outcome == PendingAuthScheduler.Outcome.CANCELLED) {
+                AuditLog.getInstance(context).record(AuditLog.Event.CANCEL, deviceId);
+            }
+        }
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
+        getPendingAuthScheduler(this);
+
         // Registrar receptor para detectar conexiones USB incluso cuando la app está cerrada
         usbReceiver = new USBReceiver();
         IntentFilter filter = new IntentFilter();
@@ -30,6 +92,30 @@ public class UsbAuthService extends Service {
         return null;
     }
 
+    /**
+     * Volcado de métricas: adb shell dumpsys activity service com.example.cipherlock/.UsbAuthService
+     * Con el argumento "reset" se ponen a cero los histogramas tras volcarlos.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        AttachMetrics.dump(writer);
+        writer.println("Eventos de auditoría descartados: " + AuditLog.getInstance(this).getDroppedCount());
+        writer.println("Control de bloqueo: " + EnforcementController.getInstance().getMetrics());
+        writer.println("Política: versión " + PolicyStore.get(this).getVersion());
+        writer.println("Uso de lista blanca: " + USBReceiver.getWhitelistUsage().size() + " dispositivos, "
+                + (USBReceiver.getWhitelistUsage().hasDirty() ? "con" : "sin") + " cambios pendientes");
+        writer.println("Lista blanca cifrada en disco: " + (WhitelistKeys.getCipher(this) != null ? "sí" : "no"));
+        writer.println("Lista blanca bloqueada (ilegible con la clave actual): "
+                + (USBReceiver.isWhitelistLocked(this) ? "sí" : "no"));
+        writer.println("Eventos de conexión: " + ATTACH_INTAKE.getMetrics());
+        writer.println("Autenticaciones: " + getPendingAuthScheduler(this).getMetrics());
+
+        if (args != null && args.length > 0 && "reset".equals(args[0])) {
+            AttachMetrics.reset();
+            writer.println("Métricas reiniciadas");
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
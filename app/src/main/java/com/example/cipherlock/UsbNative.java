@@ -0,0 +1,70 @@
+package com.example.cipherlock;
+
+import android.util.Log;
+
+/**
+ * Puerta de entrada única a la biblioteca nativa usb_auth_native.
+ *
+ * La biblioteca se carga la primera vez que se usa (clase holder) y registra sus métodos
+ * en JNI_OnLoad con RegisterNatives, así que las llamadas no resuelven símbolos por nombre
+ * ni necesitan construir una Activity.
+ */
+public final class UsbNative {
+    private static final String TAG = "UsbNative";
+    private static final String LIBRARY_NAME = "usb_auth_native";
+
+    private UsbNative() {
+    }
+
+    /**
+     * Carga perezosa y segura entre hilos: la JVM inicializa la clase una sola vez
+     */
+    private static final class Library {
+        static final boolean LOADED = load();
+
+        private static boolean load() {
+            try {
+                System.loadLibrary(LIBRARY_NAME);
+                return true;
+            } catch (UnsatisfiedLinkError e) {
+                Log.e(TAG, "No se pudo cargar la biblioteca nativa", e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Carga la biblioteca ya (p. ej. al arrancar) para que la primera decisión no lo pague.
+     * Devuelve false si no está disponible.
+     */
+    public static boolean load() {
+        return Library.LOADED;
+    }
+
+    /**
+     * Bloquea la transferencia de datos USB. Devuelve false si falla o no hay biblioteca.
+     */
+    public static boolean blockUsbDataTransfer() {
+        return Library.LOADED && nativeBlockUsbDataTransfer();
+    }
+
+    /**
+     * Permite la transferencia de datos USB. Devuelve false si falla o no hay biblioteca.
+     */
+    public static boolean allowUsbDataTransfer() {
+        return Library.LOADED && nativeAllowUsbDataTransfer();
+    }
+
+    /**
+     * Aplica en una sola llamada los cambios de varios dispositivos: handles[i] se permite
+     * si allow[i] es true y se bloquea en caso contrario. Solo se leen las count primeras.
+     */
+    public static boolean applyUsbDataTransfer(long[] handles, boolean[] allow, int count) {
+        return Library.LOADED && nativeApplyUsbDataTransfer(handles, allow, count);
+    }
+
+    // Registrados desde JNI_OnLoad en usb_auth.c
+    private static native boolean nativeBlockUsbDataTransfer();
+    private static native boolean nativeAllowUsbDataTransfer();
+    private static native boolean nativeApplyUsbDataTransfer(long[] handles, boolean[] allow, int count);
+}
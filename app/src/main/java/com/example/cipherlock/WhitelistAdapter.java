@@ -0,0 +1,190 @@
+package com.example.cipherlock;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Adaptador paginado para la lista blanca.
+ *
+ * Solo expone PAGE_SIZE filas por página y formatea cada fila al mostrarla, guardando el
+ * texto en una caché acotada. Las bajas y los filtros modifican las listas en el sitio,
+ * sin volver a leer la lista blanca ni reformatear las filas ya vistas.
+ */
+public class WhitelistAdapter extends BaseAdapter {
+    private static final int PAGE_SIZE = 100;
+    private static final int ROW_CACHE_SIZE = 256;
+
+    private final LayoutInflater inflater;
+    // Un único formateador, solo se usa en el hilo principal
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
+
+    private final WhitelistUsage usage;
+    private final List<WhitelistedDevice> allDevices;
+    private List<WhitelistedDevice> filteredDevices;
+    private String query = "";
+    private int visibleCount = PAGE_SIZE;
+
+    // Texto ya formateado por ID, en orden de acceso para descartar el menos usado
+    private final Map<String, String> rowTextCache =
+            new LinkedHashMap<String, String>(ROW_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > ROW_CACHE_SIZE;
+                }
+            };
+
+    public WhitelistAdapter(Context context, List<WhitelistedDevice> devices, WhitelistUsage usage) {
+        inflater = LayoutInflater.from(context);
+        this.usage = usage;
+        allDevices = new ArrayList<>(devices);
+        filteredDevices = allDevices;
+    }
+
+    @Override
+    public int getCount() {
+        return Math.min(visibleCount, filteredDevices.size());
+    }
+
+    @Override
+    public WhitelistedDevice getItem(int position) {
+        return filteredDevices.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return filteredDevices.get(position).getFingerprint();
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView row = (TextView) convertView;
+        if (row == null) {
+            row = (TextView) inflater.inflate(android.R.layout.simple_list_item_1, parent, false);
+        }
+        row.setText(getRowText(getItem(position)));
+        return row;
+    }
+
+    /**
+     * Indica si quedan filas filtradas por mostrar
+     */
+    public boolean hasMore() {
+        return visibleCount < filteredDevices.size();
+    }
+
+    /**
+     * Muestra la página siguiente
+     */
+    public void loadNextPage() {
+        if (hasMore()) {
+            visibleCount += PAGE_SIZE;
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Total de dispositivos, sin filtro ni paginación
+     */
+    public int getTotalCount() {
+        return allDevices.size();
+    }
+
+    /**
+     * Filtra por nombre (sin distinguir mayúsculas) o por vendorId en decimal o hexadecimal (0x...)
+     */
+    public void setFilter(String newQuery) {
+        String normalized = newQuery == null ? "" : newQuery.trim().toLowerCase(Locale.ROOT);
+        if (normalized.equals(query)) {
+            return;
+        }
+
+        // Si la búsqueda de texto amplía la anterior, basta con filtrar los resultados actuales.
+        // Con un vendorId no: "12" no incluye a los dispositivos del fabricante 123.
+        String vendorPrefix = vendorPrefix(normalized);
+        List<WhitelistedDevice> source = vendorPrefix == null && !query.isEmpty()
+                && normalized.startsWith(query) ? filteredDevices : allDevices;
+        query = normalized;
+
+        if (normalized.isEmpty()) {
+            filteredDevices = allDevices;
+        } else {
+            List<WhitelistedDevice> matches = new ArrayList<>();
+            for (WhitelistedDevice device : source) {
+                if (matches(device, normalized, vendorPrefix)) {
+                    matches.add(device);
+                }
+            }
+            filteredDevices = matches;
+        }
+
+        visibleCount = PAGE_SIZE;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Quita un dispositivo de la lista mostrada sin reconstruirla
+     */
+    public void remove(WhitelistedDevice device) {
+        allDevices.remove(device);
+        if (filteredDevices != allDevices) {
+            filteredDevices.remove(device);
+        }
+        rowTextCache.remove(device.getId());
+        notifyDataSetChanged();
+    }
+
+    private String getRowText(WhitelistedDevice device) {
+        String text = rowTextCache.get(device.getId());
+        if (text == null) {
+            String date = dateFormat.format(new Date(device.getAddedTimestamp()));
+            WhitelistUsage.Entry entry = usage.get(device.getId());
+            if (entry == null) {
+                text = device.getName() + " (añadido: " + date + ")";
+            } else {
+                text = device.getName() + " (añadido: " + date
+                        + ", última conexión: " + dateFormat.format(new Date(entry.getLastSeenTimestamp()))
+                        + ", " + entry.getHitCount() + " conexiones)";
+            }
+            rowTextCache.put(device.getId(), text);
+        }
+        return text;
+    }
+
+    private static boolean matches(WhitelistedDevice device, String query, String vendorPrefix) {
+        if (vendorPrefix != null && device.getId().startsWith(vendorPrefix)) {
+            return true;
+        }
+        String name = device.getName();
+        return name != null && name.toLowerCase(Locale.ROOT).contains(query);
+    }
+
+    /**
+     * Prefijo "vendorId:" del ID de dispositivo si la búsqueda es un número, o null
+     */
+    private static String vendorPrefix(String query) {
+        try {
+            int vendorId = query.startsWith("0x")
+                    ? Integer.parseInt(query.substring(2), 16)
+                    : Integer.parseInt(query);
+            return vendorId + ":";
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
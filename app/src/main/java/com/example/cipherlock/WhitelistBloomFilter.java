@@ -0,0 +1,95 @@
+package com.example.cipherlock;
+
+/**
+ * Filtro de Bloom sobre los hashes de 64 bits de los IDs de la lista blanca.
+ * Un resultado negativo es definitivo: el dispositivo no está en la lista.
+ *
+ * Se dimensiona para una tasa de falsos positivos del 1% con la capacidad indicada
+ * y usa doble hashing (h1 + i * h2) derivado de las dos mitades del hash.
+ */
+public class WhitelistBloomFilter {
+    private static final double TARGET_FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_CAPACITY = 64;
+
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+    private final int capacity;
+    private int count;
+
+    public WhitelistBloomFilter(int expectedEntries) {
+        capacity = Math.max(MIN_CAPACITY, expectedEntries);
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-capacity * Math.log(TARGET_FALSE_POSITIVE_RATE) / (ln2 * ln2));
+        bits = new long[(int) ((optimalBits + 63) / 64)];
+        numBits = bits.length * 64;
+        numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * ln2));
+    }
+
+    /**
+     * Copia independiente, para ampliarla sin modificar un filtro ya publicado
+     */
+    public WhitelistBloomFilter(WhitelistBloomFilter other) {
+        bits = other.bits.clone();
+        numBits = other.numBits;
+        numHashes = other.numHashes;
+        capacity = other.capacity;
+        count = other.count;
+    }
+
+    public void add(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int index = bitIndex(h1 + i * h2);
+            bits[index >>> 6] |= 1L << index;
+        }
+        count++;
+    }
+
+    public boolean mightContain(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int index = bitIndex(h1 + i * h2);
+            if ((bits[index >>> 6] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indica si se ha alcanzado la capacidad y la tasa de falsos positivos empezará a subir
+     */
+    public boolean isFull() {
+        return count >= capacity;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    public long getMemoryBytes() {
+        return bits.length * 8L;
+    }
+
+    /**
+     * Tasa teórica de falsos positivos con el número actual de entradas: (1 - e^(-kn/m))^k
+     */
+    public double getEstimatedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) numHashes * count / numBits), numHashes);
+    }
+
+    private int bitIndex(int combined) {
+        return (combined & Integer.MAX_VALUE) % numBits;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.cipherlock;
+
+import android.content.Context;
+import android.util.Log;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Caché en memoria de la lista blanca, indexada por ID de dispositivo.
+ * Se carga una sola vez por proceso y se actualiza con cada alta o baja,
+ * de modo que las consultas no vuelven a leer ni deserializar las preferencias.
+ *
+ * Los datos viven en un WhitelistStore: las consultas leen una instantánea inmutable sin
+ * bloqueos y las altas y bajas publican una nueva con compareAndSet. Cada instantánea
+ * incluye un filtro de Bloom y un índice por huella de 64 bits (DeviceFingerprint).
+ */
+public class WhitelistCache {
+    private static final String TAG = "WhitelistCache";
+
+    private static volatile WhitelistCache instance;
+
+    private final WhitelistStore store;
+
+    private WhitelistCache(List<WhitelistedDevice> devices) {
+        store = new WhitelistStore(devices);
+        Log.d(TAG, getBloomMetrics());
+    }
+
+    /**
+     * Devuelve la caché del proceso, cargándola desde el almacenamiento la primera vez
+     */
+    public static WhitelistCache getInstance(Context context) {
+        WhitelistCache cache = instance;
+        if (cache == null) {
+            synchronized (WhitelistCache.class) {
+                if (instance == null) {
+                    instance = new WhitelistCache(USBReceiver.loadWhitelistedDevices(context));
+                }
+                cache = instance;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Indica si la caché ya se ha cargado en este proceso
+     */
+    public static boolean isLoaded() {
+        return instance != null;
+    }
+
+    /**
+     * Indica si el dispositivo está en la lista blanca (O(1), sin bloqueos)
+     */
+    public boolean contains(String deviceId) {
+        return store.contains(deviceId);
+    }
+
+    /**
+     * Consulta por huella y campos del descriptor, sin construir el ID de texto
+     */
+    public boolean contains(long fingerprint, int vendorId, int productId, String serial) {
+        return store.contains(fingerprint, vendorId, productId, serial);
+    }
+
+    /**
+     * Entrada del dispositivo, o null si no está; no cuenta como consulta en las métricas del filtro
+     */
+    public WhitelistedDevice find(long fingerprint, int vendorId, int productId, String serial) {
+        return store.snapshot().findFingerprint(fingerprint, vendorId, productId, serial);
+    }
+
+    /**
+     * Añade un dispositivo. Devuelve false si ya estaba en la lista.
+     */
+    public boolean add(WhitelistedDevice device) {
+        return store.add(device);
+    }
+
+    /**
+     * Elimina un dispositivo. Devuelve false si no estaba en la lista.
+     */
+    public boolean remove(String deviceId) {
+        return store.remove(deviceId);
+    }
+
+    /**
+     * Elimina varios dispositivos con una sola publicación. Devuelve los que estaban en la lista.
+     */
+    public List<String> removeAll(Collection<String> deviceIds) {
+        return store.removeAll(deviceIds);
+    }
+
+    /**
+     * Sustituye la lista entera con una sola publicación
+     */
+    public void replaceAll(List<WhitelistedDevice> devices) {
+        store.replaceAll(devices);
+        Log.d(TAG, getBloomMetrics());
+    }
+
+    /**
+     * Devuelve una copia de los dispositivos en orden de inserción
+     */
+    public List<WhitelistedDevice> getDevices() {
+        return store.snapshot().getDevices();
+    }
+
+    public int size() {
+        return store.snapshot().size();
+    }
+
+    /**
+     * Instantánea inmutable actual, para recorrerla sin copiar ni bloquear
+     */
+    public WhitelistStore.Snapshot snapshot() {
+        return store.snapshot();
+    }
+
+    /**
+     * Tasa de falsos positivos observada: consultas que pasaron el filtro sin estar en la lista
+     */
+    public double getObservedFalsePositiveRate() {
+        return store.getObservedFalsePositiveRate();
+    }
+
+    public double getEstimatedFalsePositiveRate() {
+        return store.snapshot().getBloomFilter().getEstimatedFalsePositiveRate();
+    }
+
+    public long getBloomFilterMemoryBytes() {
+        return store.snapshot().getBloomFilter().getMemoryBytes();
+    }
+
+    /**
+     * Resumen de métricas del filtro para registro y diagnóstico
+     */
+    public String getBloomMetrics() {
+        WhitelistStore.Snapshot snapshot = store.snapshot();
+        WhitelistBloomFilter bloomFilter = snapshot.getBloomFilter();
+        return String.format(Locale.US,
+                "bloom version=%d entries=%d capacity=%d hashes=%d memory=%dB fpp_est=%.4f fpp_obs=%.4f queries=%d rejected=%d",
+                snapshot.getVersion(), bloomFilter.getCount(), bloomFilter.getCapacity(),
+                bloomFilter.getNumHashes(), bloomFilter.getMemoryBytes(),
+                bloomFilter.getEstimatedFalsePositiveRate(), store.getObservedFalsePositiveRate(),
+                store.getBloomQueries(), store.getBloomRejections());
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.cipherlock;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Codificador JSON en streaming para la lista blanca, sin reflexión ni TypeToken.
+ * Lee y escribe el mismo formato que generaba Gson.toJson(List&lt;WhitelistedDevice&gt;):
+ * [{"id":"...","name":"...","addedTimestamp":123}, ...]
+ */
+public final class WhitelistCodec {
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_NAME = "name";
+    private static final String FIELD_ADDED_TIMESTAMP = "addedTimestamp";
+
+    /**
+     * Recibe los dispositivos uno a uno mientras se leen
+     */
+    public interface DeviceSink {
+        void accept(WhitelistedDevice device) throws IOException;
+    }
+
+    private WhitelistCodec() {
+    }
+
+    /**
+     * Lee una lista completa en memoria
+     */
+    public static List<WhitelistedDevice> read(Reader reader) throws IOException {
+        final List<WhitelistedDevice> devices = new ArrayList<>();
+        read(reader, new DeviceSink() {
+            @Override
+            public void accept(WhitelistedDevice device) {
+                devices.add(device);
+            }
+        });
+        return devices;
+    }
+
+    /**
+     * Lee la lista en streaming, entregando cada dispositivo a sink sin acumularlos
+     */
+    public static void read(Reader reader, DeviceSink sink) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return;
+        }
+
+        json.beginArray();
+        while (json.hasNext()) {
+            WhitelistedDevice device = readDevice(json);
+            if (device != null) {
+                sink.accept(device);
+            }
+        }
+        json.endArray();
+    }
+
+    /**
+     * Lee un objeto dispositivo. Devuelve null para elementos null o sin ID.
+     */
+    public static WhitelistedDevice readDevice(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+
+        String id = null;
+        String name = null;
+        long addedTimestamp = 0;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (field) {
+                case FIELD_ID:
+                    id = json.nextString();
+                    break;
+                case FIELD_NAME:
+                    name = json.nextString();
+                    break;
+                case FIELD_ADDED_TIMESTAMP:
+                    addedTimestamp = json.nextLong();
+                    break;
+                default:
+                    // Campos desconocidos de versiones futuras
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+
+        return id != null ? new WhitelistedDevice(id, name, addedTimestamp) : null;
+    }
+
+    /**
+     * Escribe la lista completa
+     */
+    public static void write(Writer writer, List<WhitelistedDevice> devices) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.beginArray();
+        for (WhitelistedDevice device : devices) {
+            writeDevice(json, device);
+        }
+        json.endArray();
+        json.flush();
+    }
+
+    /**
+     * Escribe un objeto dispositivo con los mismos nombres de campo que Gson
+     */
+    public static void writeDevice(JsonWriter json, WhitelistedDevice device) throws IOException {
+        json.beginObject();
+        json.name(FIELD_ID).value(device.getId());
+        if (device.getName() != null) {
+            json.name(FIELD_NAME).value(device.getName());
+        }
+        json.name(FIELD_ADDED_TIMESTAMP).value(device.getAddedTimestamp());
+        json.endObject();
+    }
+}
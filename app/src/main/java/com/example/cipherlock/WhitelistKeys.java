@@ -0,0 +1,187 @@
+package com.example.cipherlock;
+
+import android.content.Context;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Claves del cifrado de la lista blanca (RecordCipher), generadas una vez por instalación.
+ *
+ * La clave de datos y la de índice se guardan en KEY_FILE envueltas con una clave AES-GCM
+ * del AndroidKeyStore, que no sale del almacén. En API 21-22 el Keystore no admite AES y
+ * el fichero las guarda sin envolver, protegidas solo por el almacenamiento privado de la
+ * app. Se desenvuelven una vez por proceso; después cifrar o buscar no toca el Keystore.
+ */
+public class WhitelistKeys {
+    private static final String TAG = "WhitelistKeys";
+    private static final String KEY_FILE = "whitelist.keys";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String WRAPPING_ALIAS = "whitelist_wrap";
+
+    private static final byte FORMAT_RAW = 0;
+    private static final byte FORMAT_WRAPPED = 1;
+    private static final int WRAP_IV_SIZE = 12;
+
+    private static RecordCipher cipher;
+    private static boolean loaded;
+    // Hay claves guardadas que no se pudieron leer en este proceso
+    private static boolean unreadable;
+
+    private WhitelistKeys() {
+    }
+
+    /**
+     * Cipher de la lista blanca, o null si no se pudieron obtener las claves. Si no se
+     * pudieron generar, la lista sigue en texto plano; si existen pero no se pudieron leer,
+     * isLocked() lo indica y la lista queda bloqueada hasta el próximo proceso.
+     */
+    public static synchronized RecordCipher getCipher(Context context) {
+        if (!loaded) {
+            loaded = true;
+            File file = new File(context.getApplicationContext().getFilesDir(), KEY_FILE);
+            try {
+                cipher = load(file);
+            } catch (GeneralSecurityException | IOException e) {
+                Log.e(TAG, "No se pudieron cargar las claves de la lista blanca", e);
+            }
+            if (cipher == null && file.exists()) {
+                // El fichero de claves y el log se dejan como están: el fallo puede ser pasajero
+                unreadable = true;
+                AuditLog.getInstance(context).record(AuditLog.Event.WHITELIST_LOCKED, null);
+            }
+        }
+        return cipher;
+    }
+
+    /**
+     * Indica si hay claves guardadas que no se pudieron leer; la lista cifrada no es accesible
+     */
+    public static synchronized boolean isLocked(Context context) {
+        getCipher(context);
+        return unreadable;
+    }
+
+    /**
+     * Solo genera claves si el fichero no existe. Devuelve null si existe pero no se puede
+     * desenvolver: claves nuevas harían ilegible para siempre la lista ya cifrada.
+     */
+    private static RecordCipher load(File file) throws GeneralSecurityException, IOException {
+        byte[] keys;
+        if (file.exists()) {
+            keys = readKeys(file);
+            if (keys == null) {
+                return null;
+            }
+            if (keys.length != RecordCipher.KEY_SIZE * 2) {
+                throw new IOException("Fichero de claves con longitud no válida");
+            }
+        } else {
+            keys = new byte[RecordCipher.KEY_SIZE * 2];
+            System.arraycopy(RecordCipher.generateKey(), 0, keys, 0, RecordCipher.KEY_SIZE);
+            System.arraycopy(RecordCipher.generateKey(), 0, keys, RecordCipher.KEY_SIZE, RecordCipher.KEY_SIZE);
+            writeKeys(file, keys);
+            Log.d(TAG, "Claves de lista blanca generadas");
+        }
+        return new RecordCipher(Arrays.copyOfRange(keys, 0, RecordCipher.KEY_SIZE),
+                Arrays.copyOfRange(keys, RecordCipher.KEY_SIZE, keys.length));
+    }
+
+    /**
+     * Devuelve null si el fichero está envuelto con una clave del Keystore que ya no existe
+     */
+    private static byte[] readKeys(File file) throws GeneralSecurityException, IOException {
+        byte format;
+        byte[] iv = new byte[WRAP_IV_SIZE];
+        byte[] payload;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            format = in.readByte();
+            if (format != FORMAT_RAW && format != FORMAT_WRAPPED) {
+                throw new IOException("Formato de fichero de claves desconocido: " + format);
+            }
+            if (format == FORMAT_WRAPPED) {
+                in.readFully(iv);
+            }
+            long payloadLength = file.length() - 1 - (format == FORMAT_WRAPPED ? WRAP_IV_SIZE : 0);
+            if (payloadLength <= 0 || payloadLength > 1024) {
+                throw new IOException("Fichero de claves con longitud no válida");
+            }
+            payload = new byte[(int) payloadLength];
+            in.readFully(payload);
+        }
+
+        if (format == FORMAT_RAW) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                // El sistema se actualizó desde API 22: envolver las claves a partir de ahora
+                writeKeys(file, payload);
+            }
+            return payload;
+        }
+
+        SecretKey wrappingKey = getWrappingKey(false);
+        if (wrappingKey == null) {
+            Log.e(TAG, "Clave de envoltura no encontrada en el Keystore; no se generan claves nuevas");
+            return null;
+        }
+        Cipher unwrap = Cipher.getInstance("AES/GCM/NoPadding");
+        unwrap.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(128, iv));
+        return unwrap.doFinal(payload);
+    }
+
+    private static void writeKeys(File file, byte[] keys) throws GeneralSecurityException, IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(stream);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                // El Keystore exige que el IV lo genere él
+                Cipher wrap = Cipher.getInstance("AES/GCM/NoPadding");
+                wrap.init(Cipher.ENCRYPT_MODE, getWrappingKey(true));
+                byte[] wrapped = wrap.doFinal(keys);
+                out.writeByte(FORMAT_WRAPPED);
+                out.write(wrap.getIV());
+                out.write(wrapped);
+            } else {
+                out.writeByte(FORMAT_RAW);
+                out.write(keys);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("No se pudo sustituir " + file);
+        }
+    }
+
+    private static SecretKey getWrappingKey(boolean create) throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+        SecretKey key = (SecretKey) keyStore.getKey(WRAPPING_ALIAS, null);
+        if (key != null || !create) {
+            return key;
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(WRAPPING_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+}
@@ -0,0 +1,644 @@
+package com.example.cipherlock;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Almacén de la lista blanca en un fichero binario de solo anexado.
+ *
+ * Cada alta o baja escribe un único registro con cabecera fija:
+ * crc (4) | op (1) | reservado (1) | longitud id (2) | longitud nombre (2) | timestamp (8)
+ * seguido del id y el nombre en UTF-8. El CRC cubre todo el registro salvo el propio CRC.
+ *
+ * Con un RecordCipher el fichero pasa a la versión 2 y cada registro se sella por separado:
+ * crc (4) | op (1) | reservado (1) | longitud sellada (2) | AES-GCM(timestamp (8) | longitud id (2) | id | nombre).
+ * Un alta o una baja solo cifra su propio registro; el op va como dato autenticado. Un log
+ * en texto plano se reescribe cifrado al abrirlo.
+ *
+ * El uso de los dispositivos (WhitelistUsage) se guarda como registros OP_USAGE, anexados en
+ * lote: el timestamp es la última conexión y el campo del nombre lleva el número de
+ * conexiones (4 bytes). Solo cuenta el último de cada dispositivo; los anteriores son muertos.
+ *
+ * Al abrir se reproduce el fichero y se trunca cualquier cola incompleta o corrupta
+ * (por ejemplo tras un corte de energía). Cuando los registros muertos superan el
+ * umbral, el fichero se compacta en segundo plano y se sustituye con un rename atómico.
+ */
+public class WhitelistLog implements Closeable {
+    private static final int MAGIC = 0x434C574C; // "CLWL"
+    private static final short VERSION_PLAIN = 1;
+    private static final short VERSION_SEALED = 2;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 18;
+    static final int SEALED_HEADER_SIZE = 8;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_USAGE = 3;
+
+    // Compactar cuando haya al menos este número de registros muertos y superen a los vivos
+    private static final int MIN_DEAD_RECORDS = 64;
+
+    private final File file;
+    private final File tempFile;
+    private final RecordCipher cipher;
+    private final ExecutorService compactor;
+
+    private FileOutputStream out;
+    private long length;
+    private long generation;
+    private int liveRecords;
+    private int deadRecords;
+    private boolean compacting;
+    private boolean closed;
+    private Runnable compactionListener;
+
+    /**
+     * El log o la clave no permiten descifrar los registros (p. ej. la clave se perdió)
+     */
+    public static class UnreadableLogException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnreadableLogException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    public WhitelistLog(File file) {
+        this(file, null);
+    }
+
+    /**
+     * Con cipher != null los registros se guardan cifrados; null mantiene el texto plano
+     */
+    public WhitelistLog(File file, RecordCipher cipher) {
+        this.file = file;
+        this.cipher = cipher;
+        this.tempFile = new File(file.getPath() + ".tmp");
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "whitelist-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Lee la generación de un log sin abrirlo. Devuelve -1 si no existe o no es válido.
+     */
+    public static long readGeneration(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                return -1;
+            }
+            short version = in.readShort();
+            if (version != VERSION_PLAIN && version != VERSION_SEALED) {
+                return -1;
+            }
+            in.readShort();
+            return in.readLong();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Se invoca desde el hilo de compactación cada vez que el fichero se sustituye
+     */
+    public synchronized void setCompactionListener(Runnable listener) {
+        this.compactionListener = listener;
+    }
+
+    /**
+     * Indica si el fichero existe (false en la primera ejecución tras actualizar)
+     */
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Abre el log, recupera su estado y devuelve los dispositivos vivos en orden de alta
+     */
+    public synchronized List<WhitelistedDevice> open() throws IOException {
+        return open(null);
+    }
+
+    /**
+     * Igual que open(), cargando además en usage el uso guardado de cada dispositivo
+     */
+    public synchronized List<WhitelistedDevice> open(WhitelistUsage usage) throws IOException {
+        closeOutput();
+
+        // Un temporal huérfano indica una compactación interrumpida: el original sigue siendo válido
+        if (tempFile.exists() && !tempFile.delete()) {
+            throw new IOException("No se pudo eliminar " + tempFile);
+        }
+
+        if (!file.exists() || file.length() < FILE_HEADER_SIZE) {
+            writeFresh(file, 0, new ArrayList<>(), new HashMap<>());
+        }
+
+        Replay replay = replay(file, file.length());
+        if (replay.validLength < file.length()) {
+            // Cola truncada o corrupta: descartar todo lo posterior al último registro válido
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(replay.validLength);
+                raf.getFD().sync();
+            }
+        }
+
+        length = replay.validLength;
+        generation = replay.generation;
+        liveRecords = replay.devices.size();
+        deadRecords = replay.deadRecords;
+        out = new FileOutputStream(file, true);
+
+        List<WhitelistedDevice> devices = new ArrayList<>(replay.devices.values());
+        if (usage != null) {
+            for (WhitelistUsage.Entry entry : replay.usage.values()) {
+                usage.load(entry);
+            }
+        }
+        if (cipher != null && !replay.sealed) {
+            // Migración al formato cifrado: el rename sustituye el fichero en texto plano
+            rewrite(devices, replay.usage);
+            return devices;
+        }
+        maybeScheduleCompaction();
+        return devices;
+    }
+
+    /**
+     * Sustituye todo el contenido del log por la lista dada (al migrar y al importar)
+     */
+    public synchronized void rewrite(List<WhitelistedDevice> devices) throws IOException {
+        rewrite(devices, new HashMap<>());
+    }
+
+    /**
+     * Igual que rewrite(List), conservando el uso que usage tenga de esos dispositivos
+     */
+    public synchronized void rewrite(List<WhitelistedDevice> devices, WhitelistUsage usage) throws IOException {
+        Map<String, WhitelistUsage.Entry> entries = new HashMap<>();
+        for (WhitelistedDevice device : devices) {
+            WhitelistUsage.Entry entry = usage.get(device.getId());
+            if (entry != null) {
+                entries.put(entry.getDeviceId(), entry);
+            }
+        }
+        rewrite(devices, entries);
+    }
+
+    private void rewrite(List<WhitelistedDevice> devices, Map<String, WhitelistUsage.Entry> usage)
+            throws IOException {
+        // El temporal se escribe antes de cerrar: si falla, el log actual sigue abierto y válido
+        writeFresh(tempFile, generation + 1, devices, usage);
+        closeOutput();
+        generation++;
+        replaceWithTemp();
+        length = file.length();
+        liveRecords = devices.size();
+        deadRecords = 0;
+        out = new FileOutputStream(file, true);
+    }
+
+    /**
+     * Registra el alta de un dispositivo con una sola escritura
+     */
+    public synchronized void appendAdd(WhitelistedDevice device) throws IOException {
+        append(encode(OP_ADD, device.getId(), device.getName(), device.getAddedTimestamp()));
+        liveRecords++;
+    }
+
+    /**
+     * Registra la baja de un dispositivo. El alta previa y esta baja pasan a ser registros muertos.
+     */
+    public synchronized void appendRemove(String deviceId) throws IOException {
+        append(encode(OP_REMOVE, deviceId, "", System.currentTimeMillis()));
+        liveRecords--;
+        deadRecords += 2;
+        maybeScheduleCompaction();
+    }
+
+    /**
+     * Registra la baja de varios dispositivos con una sola escritura y un solo fsync
+     */
+    public synchronized void appendRemoveAll(List<String> deviceIds) throws IOException {
+        if (deviceIds.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        for (String deviceId : deviceIds) {
+            batch.write(encode(OP_REMOVE, deviceId, "", now));
+        }
+        append(batch.toByteArray());
+        liveRecords -= deviceIds.size();
+        deadRecords += 2 * deviceIds.size();
+        maybeScheduleCompaction();
+    }
+
+    /**
+     * Anexa el uso de varios dispositivos con una sola escritura y un solo fsync.
+     * Cada registro deja obsoleto al anterior del mismo dispositivo.
+     */
+    public synchronized void appendUsage(List<WhitelistUsage.Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        for (WhitelistUsage.Entry entry : entries) {
+            batch.write(encodeUsage(entry));
+        }
+        append(batch.toByteArray());
+        // Cota superior: el primer registro de uso de cada dispositivo aún está vivo
+        deadRecords += entries.size();
+        maybeScheduleCompaction();
+    }
+
+    public synchronized long getLength() {
+        return length;
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        compactor.shutdown();
+        closeOutput();
+    }
+
+    private void append(byte[] record) throws IOException {
+        if (out == null) {
+            throw new IOException("Log de lista blanca no abierto");
+        }
+        try {
+            out.write(record);
+            out.getFD().sync();
+        } catch (IOException e) {
+            // Quitar lo que llegara a escribirse: quien llama deshace el cambio en memoria
+            try {
+                out.getChannel().truncate(length);
+            } catch (IOException ignored) {
+                // Un registro cortado se descarta al abrir; uno completo quedaría aplicado
+            }
+            throw e;
+        }
+        length += record.length;
+    }
+
+    private void closeOutput() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void maybeScheduleCompaction() {
+        if (!compacting && deadRecords >= MIN_DEAD_RECORDS && deadRecords > liveRecords) {
+            compacting = true;
+            compactor.execute(this::compact);
+        }
+    }
+
+    /**
+     * Reescribe solo los registros vivos. La lectura se hace sin bloquear a los escritores;
+     * lo anexado mientras tanto se copia tal cual antes del rename.
+     */
+    void compact() {
+        long endOffset;
+        long nextGeneration;
+        int deadAtStart;
+        Runnable listener;
+        synchronized (this) {
+            endOffset = length;
+            nextGeneration = generation + 1;
+            deadAtStart = deadRecords;
+        }
+
+        try {
+            Replay replay = replay(file, endOffset);
+            writeFresh(tempFile, nextGeneration, new ArrayList<>(replay.devices.values()), replay.usage);
+
+            synchronized (this) {
+                if (out == null || generation != nextGeneration - 1) {
+                    // Log cerrado o reescrito mientras tanto: descartar este resultado
+                    tempFile.delete();
+                    return;
+                }
+                copyTail(endOffset, length);
+                closeOutput();
+                replaceWithTemp();
+                generation = nextGeneration;
+                length = file.length();
+                deadRecords -= deadAtStart;
+                out = new FileOutputStream(file, true);
+                listener = compactionListener;
+            }
+            if (listener != null) {
+                listener.run();
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            // Si no se pudo reabrir, las siguientes escrituras fallarán y se informará al llamante
+            synchronized (this) {
+                if (out == null && !closed) {
+                    try {
+                        out = new FileOutputStream(file, true);
+                    } catch (IOException ignored) {
+                        // Sin salida disponible
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private void copyTail(long from, long to) throws IOException {
+        if (to <= from) {
+            return;
+        }
+        try (RandomAccessFile source = new RandomAccessFile(file, "r");
+             FileOutputStream target = new FileOutputStream(tempFile, true)) {
+            source.seek(from);
+            byte[] buffer = new byte[8192];
+            long remaining = to - from;
+            while (remaining > 0) {
+                int read = source.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Cola del log truncada durante la compactación");
+                }
+                target.write(buffer, 0, read);
+                remaining -= read;
+            }
+            target.getFD().sync();
+        }
+    }
+
+    private void replaceWithTemp() throws IOException {
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("No se pudo sustituir " + file);
+        }
+    }
+
+    private void writeFresh(File target, long generation, List<WhitelistedDevice> devices,
+                            Map<String, WhitelistUsage.Entry> usage) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(target)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(stream);
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putShort(cipher != null ? VERSION_SEALED : VERSION_PLAIN).putShort((short) 0).putLong(generation);
+            buffered.write(header.array());
+            for (WhitelistedDevice device : devices) {
+                buffered.write(encode(OP_ADD, device.getId(), device.getName(), device.getAddedTimestamp()));
+                WhitelistUsage.Entry entry = usage.get(device.getId());
+                if (entry != null) {
+                    buffered.write(encodeUsage(entry));
+                }
+            }
+            buffered.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    private byte[] encode(byte op, String id, String name, long timestamp) throws IOException {
+        return encode(op, id.getBytes(StandardCharsets.UTF_8),
+                (name != null ? name : "").getBytes(StandardCharsets.UTF_8), timestamp);
+    }
+
+    private byte[] encodeUsage(WhitelistUsage.Entry entry) throws IOException {
+        byte[] hits = ByteBuffer.allocate(4).putInt(entry.getHitCount()).array();
+        return encode(OP_USAGE, entry.getDeviceId().getBytes(StandardCharsets.UTF_8), hits,
+                entry.getLastSeenTimestamp());
+    }
+
+    private byte[] encode(byte op, byte[] idBytes, byte[] nameBytes, long timestamp) throws IOException {
+        if (idBytes.length > 0xFFFF || nameBytes.length > 0xFFFF) {
+            throw new IOException("Registro de lista blanca demasiado largo");
+        }
+        if (cipher != null) {
+            return encodeSealed(op, idBytes, nameBytes, timestamp);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + idBytes.length + nameBytes.length);
+        buffer.putInt(0)
+                .put(op)
+                .put((byte) 0)
+                .putShort((short) idBytes.length)
+                .putShort((short) nameBytes.length)
+                .putLong(timestamp)
+                .put(idBytes)
+                .put(nameBytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, buffer.capacity() - 4);
+        buffer.putInt(0, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    private byte[] encodeSealed(byte op, byte[] idBytes, byte[] nameBytes, long timestamp) throws IOException {
+        ByteBuffer plain = ByteBuffer.allocate(10 + idBytes.length + nameBytes.length);
+        plain.putLong(timestamp).putShort((short) idBytes.length).put(idBytes).put(nameBytes);
+
+        byte[] sealed;
+        try {
+            sealed = cipher.seal(plain.array(), new byte[] {op});
+        } catch (GeneralSecurityException e) {
+            throw new IOException("No se pudo cifrar el registro de lista blanca", e);
+        }
+        if (sealed.length > 0xFFFF) {
+            throw new IOException("Registro de lista blanca demasiado largo");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(SEALED_HEADER_SIZE + sealed.length);
+        buffer.putInt(0)
+                .put(op)
+                .put((byte) 0)
+                .putShort((short) sealed.length)
+                .put(sealed);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, buffer.capacity() - 4);
+        buffer.putInt(0, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Reproduce el log hasta endOffset y se detiene en el primer registro incompleto o corrupto.
+     * Un registro íntegro (CRC correcto) que no se puede descifrar no es una cola rota: se
+     * informa con UnreadableLogException en lugar de truncar.
+     */
+    private Replay replay(File source, long endOffset) throws IOException {
+        Replay replay = new Replay();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(source)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Cabecera de log de lista blanca no válida");
+            }
+            short version = in.readShort();
+            if (version != VERSION_PLAIN && version != VERSION_SEALED) {
+                throw new IOException("Versión de log no soportada: " + version);
+            }
+            in.readShort();
+            replay.generation = in.readLong();
+            replay.validLength = FILE_HEADER_SIZE;
+            replay.sealed = version == VERSION_SEALED;
+            if (replay.sealed) {
+                if (cipher == null) {
+                    throw new UnreadableLogException("Log de lista blanca cifrado sin clave disponible", null);
+                }
+                replaySealed(in, endOffset, replay);
+                return replay;
+            }
+
+            byte[] header = new byte[RECORD_HEADER_SIZE];
+            CRC32 crc = new CRC32();
+            while (replay.validLength + RECORD_HEADER_SIZE <= endOffset) {
+                try {
+                    in.readFully(header);
+                } catch (EOFException e) {
+                    break;
+                }
+                ByteBuffer view = ByteBuffer.wrap(header);
+                int storedCrc = view.getInt();
+                byte op = view.get();
+                view.get();
+                int idLength = view.getShort() & 0xFFFF;
+                int nameLength = view.getShort() & 0xFFFF;
+                long timestamp = view.getLong();
+
+                long recordLength = RECORD_HEADER_SIZE + idLength + nameLength;
+                if (op < OP_ADD || op > OP_USAGE || replay.validLength + recordLength > endOffset) {
+                    break;
+                }
+
+                byte[] payload = new byte[idLength + nameLength];
+                try {
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(header, 4, RECORD_HEADER_SIZE - 4);
+                crc.update(payload, 0, payload.length);
+                if ((int) crc.getValue() != storedCrc) {
+                    break;
+                }
+
+                String id = new String(payload, 0, idLength, StandardCharsets.UTF_8);
+                replay.apply(op, id, payload, idLength, nameLength, timestamp);
+                replay.validLength += recordLength;
+            }
+        }
+        return replay;
+    }
+
+    private void replaySealed(DataInputStream in, long endOffset, Replay replay) throws IOException {
+        byte[] header = new byte[SEALED_HEADER_SIZE];
+        byte[] aad = new byte[1];
+        CRC32 crc = new CRC32();
+        while (replay.validLength + SEALED_HEADER_SIZE <= endOffset) {
+            try {
+                in.readFully(header);
+            } catch (EOFException e) {
+                break;
+            }
+            ByteBuffer view = ByteBuffer.wrap(header);
+            int storedCrc = view.getInt();
+            byte op = view.get();
+            view.get();
+            int sealedLength = view.getShort() & 0xFFFF;
+
+            long recordLength = SEALED_HEADER_SIZE + sealedLength;
+            if (op < OP_ADD || op > OP_USAGE || replay.validLength + recordLength > endOffset) {
+                break;
+            }
+
+            byte[] sealed = new byte[sealedLength];
+            try {
+                in.readFully(sealed);
+            } catch (EOFException e) {
+                break;
+            }
+
+            crc.reset();
+            crc.update(header, 4, SEALED_HEADER_SIZE - 4);
+            crc.update(sealed, 0, sealed.length);
+            if ((int) crc.getValue() != storedCrc) {
+                break;
+            }
+
+            byte[] plain;
+            try {
+                aad[0] = op;
+                plain = cipher.open(sealed, 0, sealed.length, aad);
+            } catch (GeneralSecurityException e) {
+                throw new UnreadableLogException("No se pudo descifrar el log de lista blanca", e);
+            }
+            ByteBuffer record = ByteBuffer.wrap(plain);
+            long timestamp = record.getLong();
+            int idLength = record.getShort() & 0xFFFF;
+            if (10 + idLength > plain.length) {
+                throw new UnreadableLogException("Registro cifrado mal formado", null);
+            }
+            String id = new String(plain, 10, idLength, StandardCharsets.UTF_8);
+            replay.apply(op, id, plain, 10 + idLength, plain.length - 10 - idLength, timestamp);
+            replay.validLength += recordLength;
+        }
+    }
+
+    private static class Replay {
+        final Map<String, WhitelistedDevice> devices = new LinkedHashMap<>();
+        final Map<String, WhitelistUsage.Entry> usage = new HashMap<>();
+        long generation;
+        long validLength;
+        int deadRecords;
+        boolean sealed;
+
+        /**
+         * Aplica un registro; data[offset, offset + length) es el nombre o, en OP_USAGE, el contador
+         */
+        void apply(byte op, String id, byte[] data, int offset, int length, long timestamp) {
+            if (op == OP_ADD) {
+                String name = new String(data, offset, length, StandardCharsets.UTF_8);
+                if (devices.put(id, new WhitelistedDevice(id, name, timestamp)) != null) {
+                    deadRecords++;
+                }
+            } else if (op == OP_REMOVE) {
+                devices.remove(id);
+                deadRecords += usage.remove(id) != null ? 3 : 2;
+            } else if (!devices.containsKey(id) || length != 4) {
+                deadRecords++;
+            } else {
+                int hits = ByteBuffer.wrap(data, offset, 4).getInt();
+                if (usage.put(id, new WhitelistUsage.Entry(id, timestamp, hits)) != null) {
+                    deadRecords++;
+                }
+            }
+        }
+    }
+}
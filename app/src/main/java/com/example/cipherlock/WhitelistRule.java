@@ -0,0 +1,61 @@
+package com.example.cipherlock;
+
+/**
+ * Regla de política para familias de dispositivos USB.
+ * Un campo null significa "cualquiera". Se guarda en JSON igual que WhitelistedDevice.
+ */
+public class WhitelistRule {
+    private Integer vendorId;
+    private Integer productIdMin;
+    private Integer productIdMax;
+    private Integer usbClass;
+    private Integer usbSubclass;
+    private String serialPrefix;
+    private boolean allow;
+    private String description;
+
+    public WhitelistRule(Integer vendorId, Integer productIdMin, Integer productIdMax,
+                         Integer usbClass, Integer usbSubclass, String serialPrefix,
+                         boolean allow, String description) {
+        this.vendorId = vendorId;
+        this.productIdMin = productIdMin;
+        this.productIdMax = productIdMax;
+        this.usbClass = usbClass;
+        this.usbSubclass = usbSubclass;
+        this.serialPrefix = serialPrefix;
+        this.allow = allow;
+        this.description = description;
+    }
+
+    public Integer getVendorId() {
+        return vendorId;
+    }
+
+    public Integer getProductIdMin() {
+        return productIdMin;
+    }
+
+    public Integer getProductIdMax() {
+        return productIdMax;
+    }
+
+    public Integer getUsbClass() {
+        return usbClass;
+    }
+
+    public Integer getUsbSubclass() {
+        return usbSubclass;
+    }
+
+    public String getSerialPrefix() {
+        return serialPrefix;
+    }
+
+    public boolean isAllow() {
+        return allow;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.cipherlock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conjunto de reglas compilado en tablas para evaluar una conexión con pocas consultas,
+ * independientemente del número de reglas cargadas.
+ *
+ * Las reglas se reparten en tres tablas: por vendorId, por clase USB (reglas sin vendorId)
+ * y genéricas (sin vendorId ni clase). Una conexión consulta su fila de vendorId, la fila
+ * de cada clase declarada por el dispositivo o sus interfaces, y las genéricas.
+ * Si alguna regla de denegación coincide gana sobre cualquier permiso.
+ */
+public class WhitelistRuleEngine {
+    public enum Decision { ALLOW, DENY, NO_MATCH }
+
+    private static final int ANY = -1;
+    private static final CompiledRule[] NO_RULES = new CompiledRule[0];
+
+    public static final WhitelistRuleEngine EMPTY = new WhitelistRuleEngine(new ArrayList<>());
+
+    private final LongHashMap<CompiledRule[]> rulesByVendor = new LongHashMap<>();
+    private final LongHashMap<CompiledRule[]> rulesByClass = new LongHashMap<>();
+    private final CompiledRule[] genericRules;
+    private final int ruleCount;
+    private final boolean usesClasses;
+
+    public WhitelistRuleEngine(List<WhitelistRule> rules) {
+        Map<Integer, List<CompiledRule>> vendorBuckets = new HashMap<>();
+        Map<Integer, List<CompiledRule>> classBuckets = new HashMap<>();
+        List<CompiledRule> generic = new ArrayList<>();
+        boolean classConditions = false;
+
+        for (WhitelistRule rule : rules) {
+            CompiledRule compiled = new CompiledRule(rule);
+            classConditions |= compiled.usbClass != ANY;
+            if (compiled.vendorId != ANY) {
+                bucket(vendorBuckets, compiled.vendorId).add(compiled);
+            } else if (compiled.usbClass != ANY) {
+                bucket(classBuckets, compiled.usbClass).add(compiled);
+            } else {
+                generic.add(compiled);
+            }
+        }
+
+        for (Map.Entry<Integer, List<CompiledRule>> entry : vendorBuckets.entrySet()) {
+            rulesByVendor.put(entry.getKey(), entry.getValue().toArray(NO_RULES));
+        }
+        for (Map.Entry<Integer, List<CompiledRule>> entry : classBuckets.entrySet()) {
+            rulesByClass.put(entry.getKey(), entry.getValue().toArray(NO_RULES));
+        }
+        genericRules = generic.toArray(NO_RULES);
+        ruleCount = rules.size();
+        usesClasses = classConditions;
+    }
+
+    public boolean isEmpty() {
+        return ruleCount == 0;
+    }
+
+    /**
+     * Indica si alguna regla depende de la clase USB y por tanto hay que leer las interfaces
+     */
+    public boolean usesClasses() {
+        return usesClasses;
+    }
+
+    /**
+     * Evalúa una conexión. classes contiene pares (clase << 8 | subclase) del dispositivo
+     * y de sus interfaces; solo se leen las primeras classCount posiciones.
+     */
+    public Decision evaluate(int vendorId, int productId, String serial, int[] classes, int classCount) {
+        boolean allowed = false;
+
+        CompiledRule[] vendorRules = rulesByVendor.get(vendorId);
+        if (vendorRules != null) {
+            for (CompiledRule rule : vendorRules) {
+                if (rule.matches(vendorId, productId, serial, classes, classCount)) {
+                    if (!rule.allow) {
+                        return Decision.DENY;
+                    }
+                    allowed = true;
+                }
+            }
+        }
+
+        for (int i = 0; i < classCount; i++) {
+            CompiledRule[] classRules = rulesByClass.get(classes[i] >>> 8);
+            if (classRules == null) {
+                continue;
+            }
+            for (CompiledRule rule : classRules) {
+                if (rule.matches(vendorId, productId, serial, classes, classCount)) {
+                    if (!rule.allow) {
+                        return Decision.DENY;
+                    }
+                    allowed = true;
+                }
+            }
+        }
+
+        for (CompiledRule rule : genericRules) {
+            if (rule.matches(vendorId, productId, serial, classes, classCount)) {
+                if (!rule.allow) {
+                    return Decision.DENY;
+                }
+                allowed = true;
+            }
+        }
+
+        return allowed ? Decision.ALLOW : Decision.NO_MATCH;
+    }
+
+    private static List<CompiledRule> bucket(Map<Integer, List<CompiledRule>> buckets, int key) {
+        List<CompiledRule> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * Regla normalizada a primitivos, con ANY en lugar de null
+     */
+    private static class CompiledRule {
+        final int vendorId;
+        final int productIdMin;
+        final int productIdMax;
+        final int usbClass;
+        final int usbSubclass;
+        final String serialPrefix;
+        final boolean allow;
+
+        CompiledRule(WhitelistRule rule) {
+            vendorId = valueOrAny(rule.getVendorId());
+            productIdMin = rule.getProductIdMin() != null ? rule.getProductIdMin() : Integer.MIN_VALUE;
+            productIdMax = rule.getProductIdMax() != null ? rule.getProductIdMax() : Integer.MAX_VALUE;
+            usbClass = valueOrAny(rule.getUsbClass());
+            usbSubclass = valueOrAny(rule.getUsbSubclass());
+            serialPrefix = rule.getSerialPrefix() != null && !rule.getSerialPrefix().isEmpty()
+                    ? rule.getSerialPrefix() : null;
+            allow = rule.isAllow();
+        }
+
+        boolean matches(int vendorId, int productId, String serial, int[] classes, int classCount) {
+            if (this.vendorId != ANY && this.vendorId != vendorId) {
+                return false;
+            }
+            if (productId < productIdMin || productId > productIdMax) {
+                return false;
+            }
+            if (serialPrefix != null && (serial == null || !serial.startsWith(serialPrefix))) {
+                return false;
+            }
+            if (usbClass == ANY) {
+                return true;
+            }
+            for (int i = 0; i < classCount; i++) {
+                int deviceClass = classes[i] >>> 8;
+                int deviceSubclass = classes[i] & 0xFF;
+                if (deviceClass == usbClass && (usbSubclass == ANY || deviceSubclass == usbSubclass)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int valueOrAny(Integer value) {
+            return value != null ? value : ANY;
+        }
+    }
+}
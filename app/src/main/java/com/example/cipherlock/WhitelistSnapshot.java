@@ -0,0 +1,313 @@
+package com.example.cipherlock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Instantánea binaria de la lista blanca para decidir en un proceso recién iniciado
+ * sin deserializar la lista completa.
+ *
+ * El fichero tiene una cabecera de 32 bytes (magic, versión, número de registros,
+ * generación y longitud del log del que procede) seguida de registros de ancho fijo
+ * ordenados por huella (DeviceFingerprint): huella (8) | longitud id (2) | id en UTF-8 (118).
+ * Se lee con un MappedByteBuffer y se busca en sitio con búsqueda binaria.
+ *
+ * Con un RecordCipher se escribe la versión 2, que no guarda IDs ni huellas: cada registro
+ * es solo la entrada del índice con clave (RecordCipher.indexOf, 16 bytes), ordenada. La
+ * consulta calcula esa entrada para el ID conectado y busca; nunca descifra nada. La huella
+ * sin clave no se guarda porque permitiría probar IDs candidatos sin la clave.
+ */
+public class WhitelistSnapshot {
+    private static final int MAGIC = 0x434C5753; // "CLWS"
+    private static final short VERSION_PLAIN = 1;
+    private static final short VERSION_KEYED = 2;
+    private static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 128;
+    static final int KEYED_RECORD_SIZE = RecordCipher.INDEX_SIZE;
+    static final int MAX_ID_BYTES = RECORD_SIZE - 10;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final long logGeneration;
+    private final long logLength;
+    // Solo en la versión 2
+    private final RecordCipher cipher;
+
+    private WhitelistSnapshot(MappedByteBuffer buffer, int count, long logGeneration, long logLength,
+                              RecordCipher cipher) {
+        this.buffer = buffer;
+        this.count = count;
+        this.logGeneration = logGeneration;
+        this.logLength = logLength;
+        this.cipher = cipher;
+    }
+
+    /**
+     * Proyecta la instantánea en memoria. Devuelve null si no existe o no es válida.
+     */
+    public static WhitelistSnapshot open(File file) {
+        return open(file, null);
+    }
+
+    /**
+     * Igual que open(File), aceptando también el índice con clave si se da el cipher que lo escribió
+     */
+    public static WhitelistSnapshot open(File file, RecordCipher cipher) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+
+            // El mapeo sigue siendo válido tras cerrar el canal
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            short version = buffer.getShort(4);
+            boolean keyed = version == VERSION_KEYED && cipher != null;
+            if (buffer.getInt(0) != MAGIC || (version != VERSION_PLAIN && !keyed)) {
+                return null;
+            }
+            int count = buffer.getInt(8);
+            int recordSize = keyed ? KEYED_RECORD_SIZE : RECORD_SIZE;
+            if (count < 0 || HEADER_SIZE + (long) count * recordSize != size) {
+                return null;
+            }
+            return new WhitelistSnapshot(buffer, count, buffer.getLong(16), buffer.getLong(24),
+                    keyed ? cipher : null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Escribe una nueva instantánea de forma atómica (temporal + rename).
+     * Devuelve false si algún ID no cabe en el ancho fijo; en ese caso se elimina la anterior.
+     */
+    public static boolean write(File file, List<WhitelistedDevice> devices,
+                                long logGeneration, long logLength) throws IOException {
+        int count = devices.size();
+        long[] hashes = new long[count];
+        byte[][] ids = new byte[count][];
+        Integer[] order = new Integer[count];
+
+        for (int i = 0; i < count; i++) {
+            String id = devices.get(i).getId();
+            ids[i] = id.getBytes(StandardCharsets.UTF_8);
+            if (ids[i].length > MAX_ID_BYTES) {
+                file.delete();
+                return false;
+            }
+            hashes[i] = DeviceFingerprint.of(id);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE);
+        buffer.putInt(MAGIC)
+                .putShort(VERSION_PLAIN)
+                .putShort((short) 0)
+                .putInt(count)
+                .putInt(0)
+                .putLong(logGeneration)
+                .putLong(logLength);
+
+        for (int index : order) {
+            int position = buffer.position();
+            buffer.putLong(hashes[index])
+                    .putShort((short) ids[index].length)
+                    .put(ids[index]);
+            buffer.position(position + RECORD_SIZE);
+        }
+
+        replace(file, buffer.array());
+        return true;
+    }
+
+    /**
+     * Con cipher != null escribe el índice con clave (versión 2); si no, write(File, ...).
+     * El índice con clave no tiene límite de longitud de ID.
+     */
+    public static boolean write(File file, List<WhitelistedDevice> devices, long logGeneration,
+                                long logLength, RecordCipher cipher) throws IOException {
+        if (cipher == null) {
+            return write(file, devices, logGeneration, logLength);
+        }
+
+        int count = devices.size();
+        byte[][] entries = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            entries[i] = cipher.indexOf(devices.get(i).getId());
+        }
+        Arrays.sort(entries, WhitelistSnapshot::compareEntries);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * KEYED_RECORD_SIZE);
+        buffer.putInt(MAGIC)
+                .putShort(VERSION_KEYED)
+                .putShort((short) 0)
+                .putInt(count)
+                .putInt(0)
+                .putLong(logGeneration)
+                .putLong(logLength);
+        for (byte[] entry : entries) {
+            buffer.put(entry);
+        }
+
+        replace(file, buffer.array());
+        return true;
+    }
+
+    private static void replace(File file, byte[] content) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(content);
+            out.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("No se pudo sustituir " + file);
+        }
+    }
+
+    private static int compareEntries(byte[] a, byte[] b) {
+        ByteBuffer left = ByteBuffer.wrap(a);
+        ByteBuffer right = ByteBuffer.wrap(b);
+        int result = Long.compare(left.getLong(0), right.getLong(0));
+        return result != 0 ? result : Long.compare(left.getLong(8), right.getLong(8));
+    }
+
+    /**
+     * Indica si la instantánea corresponde exactamente al estado actual del log
+     */
+    public boolean isCurrent(long generation, long length) {
+        return logGeneration == generation && logLength == length;
+    }
+
+    /**
+     * Busca el dispositivo por hash y confirma el ID completo para descartar colisiones
+     */
+    public boolean contains(String deviceId) {
+        if (cipher != null) {
+            return containsEntry(cipher.indexOf(deviceId));
+        }
+        return contains(DeviceFingerprint.of(deviceId), deviceId);
+    }
+
+    /**
+     * Variante para la ruta de conexión: el ID de texto solo se construye si coincide la huella
+     */
+    public boolean contains(long fingerprint, int vendorId, int productId, String serial) {
+        if (cipher != null) {
+            return containsEntry(cipher.indexOf(DeviceFingerprint.toDeviceId(vendorId, productId, serial)));
+        }
+        if (!containsHash(fingerprint)) {
+            return false;
+        }
+        return contains(fingerprint, DeviceFingerprint.toDeviceId(vendorId, productId, serial));
+    }
+
+    private boolean containsEntry(byte[] entry) {
+        ByteBuffer view = ByteBuffer.wrap(entry);
+        long high = view.getLong(0);
+        long low = view.getLong(8);
+        int from = 0;
+        int to = count - 1;
+        while (from <= to) {
+            int mid = (from + to) >>> 1;
+            int offset = HEADER_SIZE + mid * KEYED_RECORD_SIZE;
+            int result = Long.compare(buffer.getLong(offset), high);
+            if (result == 0) {
+                result = Long.compare(buffer.getLong(offset + 8), low);
+            }
+            if (result < 0) {
+                from = mid + 1;
+            } else if (result > 0) {
+                to = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsHash(long hash) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midHash = buffer.getLong(recordOffset(mid));
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(long hash, String deviceId) {
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midHash = buffer.getLong(recordOffset(mid));
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                byte[] idBytes = deviceId.getBytes(StandardCharsets.UTF_8);
+                // Puede haber varios registros con el mismo hash a ambos lados
+                for (int i = mid; i >= 0 && buffer.getLong(recordOffset(i)) == hash; i--) {
+                    if (idEquals(i, idBytes)) {
+                        return true;
+                    }
+                }
+                for (int i = mid + 1; i < count && buffer.getLong(recordOffset(i)) == hash; i++) {
+                    if (idEquals(i, idBytes)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private boolean idEquals(int index, byte[] idBytes) {
+        int offset = recordOffset(index) + 8;
+        int length = buffer.getShort(offset) & 0xFFFF;
+        if (length != idBytes.length) {
+            return false;
+        }
+        offset += 2;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != idBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.cipherlock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lista blanca en memoria como instantáneas inmutables tras una AtomicReference.
+ *
+ * Los lectores toman la instantánea actual y consultan sus índices sin bloqueos. Cada
+ * escritura construye una copia con el cambio y versión + 1 y la publica con compareAndSet;
+ * si otro escritor publicó antes, se repite sobre la nueva instantánea, así que ninguna
+ * actualización concurrente se pierde.
+ *
+ * Cada alta o baja cuesta O(n): copia el mapa por ID y los arrays del índice por huella
+ * (sin recalcular posiciones) y aplica solo su cambio. El filtro de Bloom se clona en las
+ * altas y se comparte en las bajas. En la app las escrituras ya van serializadas por
+ * USBReceiver, así que los reintentos del compareAndSet son excepcionales.
+ */
+public class WhitelistStore {
+
+    /**
+     * Estado inmutable de la lista blanca: índice por ID, índice por huella y filtro de Bloom
+     */
+    public static final class Snapshot {
+        // Marca en el índice por huella cuando dos IDs distintos comparten huella
+        private static final Object COLLISION = new Object();
+
+        private final long version;
+        // Mantiene el orden de inserción para mostrar la lista igual que antes
+        private final Map<String, WhitelistedDevice> devicesById;
+        private final LongHashMap<Object> devicesByFingerprint;
+        private final WhitelistBloomFilter bloomFilter;
+
+        private Snapshot(long version, Map<String, WhitelistedDevice> devicesById,
+                         LongHashMap<Object> devicesByFingerprint, WhitelistBloomFilter bloomFilter) {
+            this.version = version;
+            this.devicesById = devicesById;
+            this.devicesByFingerprint = devicesByFingerprint;
+            this.bloomFilter = bloomFilter;
+        }
+
+        /**
+         * Construye los índices desde cero; para la carga inicial y las sustituciones completas
+         */
+        static Snapshot build(long version, Map<String, WhitelistedDevice> devicesById) {
+            LongHashMap<Object> byFingerprint = new LongHashMap<>(devicesById.size());
+            for (WhitelistedDevice device : devicesById.values()) {
+                indexFingerprint(byFingerprint, device);
+            }
+            return new Snapshot(version, devicesById, byFingerprint, newBloomFilter(devicesById.values()));
+        }
+
+        private static void indexFingerprint(LongHashMap<Object> byFingerprint, WhitelistedDevice device) {
+            Object existing = byFingerprint.get(device.getFingerprint());
+            byFingerprint.put(device.getFingerprint(), existing == null ? device : COLLISION);
+        }
+
+        /**
+         * Quita un dispositivo ya eliminado de devices del índice por huella
+         */
+        private static void unindexFingerprint(LongHashMap<Object> byFingerprint,
+                                               Map<String, WhitelistedDevice> devices,
+                                               WhitelistedDevice removed) {
+            long fingerprint = removed.getFingerprint();
+            if (byFingerprint.get(fingerprint) != COLLISION) {
+                byFingerprint.remove(fingerprint);
+                return;
+            }
+            // Caso excepcional: buscar quién comparte todavía la huella
+            WhitelistedDevice remaining = null;
+            for (WhitelistedDevice device : devices.values()) {
+                if (device.getFingerprint() == fingerprint) {
+                    if (remaining != null) {
+                        return;
+                    }
+                    remaining = device;
+                }
+            }
+            if (remaining != null) {
+                byFingerprint.put(fingerprint, remaining);
+            } else {
+                byFingerprint.remove(fingerprint);
+            }
+        }
+
+        private static WhitelistBloomFilter newBloomFilter(Collection<WhitelistedDevice> devices) {
+            // Margen del doble para que las altas siguientes solo amplíen una copia
+            WhitelistBloomFilter bloom = new WhitelistBloomFilter(devices.size() * 2);
+            for (WhitelistedDevice device : devices) {
+                bloom.add(device.getFingerprint());
+            }
+            return bloom;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public int size() {
+            return devicesById.size();
+        }
+
+        /**
+         * Devuelve una copia de los dispositivos en orden de inserción
+         */
+        public List<WhitelistedDevice> getDevices() {
+            return new ArrayList<>(devicesById.values());
+        }
+
+        /**
+         * Vista de solo lectura en orden de inserción, para recorrerla sin copiar
+         */
+        public Collection<WhitelistedDevice> devices() {
+            return Collections.unmodifiableCollection(devicesById.values());
+        }
+
+        public WhitelistedDevice get(String deviceId) {
+            return devicesById.get(deviceId);
+        }
+
+        public WhitelistBloomFilter getBloomFilter() {
+            return bloomFilter;
+        }
+
+        boolean containsId(String deviceId) {
+            return devicesById.containsKey(deviceId);
+        }
+
+        boolean containsFingerprint(long fingerprint, int vendorId, int productId, String serial) {
+            return findFingerprint(fingerprint, vendorId, productId, serial) != null;
+        }
+
+        /**
+         * Entrada del dispositivo por huella y campos del descriptor, o null si no está
+         */
+        public WhitelistedDevice findFingerprint(long fingerprint, int vendorId, int productId, String serial) {
+            Object entry = devicesByFingerprint.get(fingerprint);
+            if (entry == null) {
+                return null;
+            }
+            if (entry == COLLISION) {
+                // Caso excepcional: varias entradas con la misma huella
+                return devicesById.get(DeviceFingerprint.toDeviceId(vendorId, productId, serial));
+            }
+            WhitelistedDevice device = (WhitelistedDevice) entry;
+            return DeviceFingerprint.matches(device.getId(), vendorId, productId, serial) ? device : null;
+        }
+
+        Snapshot withDevice(WhitelistedDevice device) {
+            Map<String, WhitelistedDevice> devices = new LinkedHashMap<>(devicesById);
+            devices.put(device.getId(), device);
+            LongHashMap<Object> byFingerprint = new LongHashMap<>(devicesByFingerprint);
+            indexFingerprint(byFingerprint, device);
+
+            // El filtro publicado no se modifica: se amplía una copia, salvo que se haya quedado pequeño
+            WhitelistBloomFilter bloom;
+            if (bloomFilter.isFull()) {
+                bloom = newBloomFilter(devices.values());
+            } else {
+                bloom = new WhitelistBloomFilter(bloomFilter);
+                bloom.add(device.getFingerprint());
+            }
+            return new Snapshot(version + 1, devices, byFingerprint, bloom);
+        }
+
+        Snapshot withoutDevice(String deviceId) {
+            return withoutDevices(Collections.singletonList(deviceId), new ArrayList<String>());
+        }
+
+        /**
+         * Copia sin los IDs dados; los que estaban se añaden a removed
+         */
+        Snapshot withoutDevices(Collection<String> deviceIds, List<String> removed) {
+            Map<String, WhitelistedDevice> devices = new LinkedHashMap<>(devicesById);
+            LongHashMap<Object> byFingerprint = new LongHashMap<>(devicesByFingerprint);
+            for (String deviceId : deviceIds) {
+                WhitelistedDevice device = devices.remove(deviceId);
+                if (device != null) {
+                    unindexFingerprint(byFingerprint, devices, device);
+                    removed.add(deviceId);
+                }
+            }
+            // Un filtro de Bloom no admite borrados: se comparte y los bits sobrantes solo
+            // añaden falsos positivos, que el índice descarta. Se rehace al llenarse.
+            return new Snapshot(version + 1, devices, byFingerprint, bloomFilter);
+        }
+    }
+
+    private final AtomicReference<Snapshot> current;
+
+    // Métricas del filtro
+    private final AtomicLong bloomQueries = new AtomicLong();
+    private final AtomicLong bloomRejections = new AtomicLong();
+    private final AtomicLong bloomFalsePositives = new AtomicLong();
+
+    public WhitelistStore(Collection<WhitelistedDevice> devices) {
+        current = new AtomicReference<>(Snapshot.build(0, index(devices)));
+    }
+
+    /**
+     * Instantánea actual; no cambia aunque haya escrituras posteriores
+     */
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    public long getVersion() {
+        return current.get().version;
+    }
+
+    /**
+     * Indica si el dispositivo está en la lista blanca, sin bloqueos
+     */
+    public boolean contains(String deviceId) {
+        Snapshot snapshot = current.get();
+        if (!passesBloomFilter(snapshot, DeviceFingerprint.of(deviceId))) {
+            return false;
+        }
+        return recordLookup(snapshot.containsId(deviceId));
+    }
+
+    /**
+     * Consulta por huella y campos del descriptor, sin construir el ID de texto
+     */
+    public boolean contains(long fingerprint, int vendorId, int productId, String serial) {
+        Snapshot snapshot = current.get();
+        if (!passesBloomFilter(snapshot, fingerprint)) {
+            return false;
+        }
+        return recordLookup(snapshot.containsFingerprint(fingerprint, vendorId, productId, serial));
+    }
+
+    /**
+     * Añade un dispositivo. Devuelve false si ya estaba en la lista.
+     */
+    public boolean add(WhitelistedDevice device) {
+        while (true) {
+            Snapshot snapshot = current.get();
+            if (snapshot.containsId(device.getId())) {
+                return false;
+            }
+            if (current.compareAndSet(snapshot, snapshot.withDevice(device))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Elimina un dispositivo. Devuelve false si no estaba en la lista.
+     */
+    public boolean remove(String deviceId) {
+        while (true) {
+            Snapshot snapshot = current.get();
+            if (!snapshot.containsId(deviceId)) {
+                return false;
+            }
+            if (current.compareAndSet(snapshot, snapshot.withoutDevice(deviceId))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Elimina varios dispositivos con una sola publicación. Devuelve los que estaban en la lista.
+     */
+    public List<String> removeAll(Collection<String> deviceIds) {
+        while (true) {
+            Snapshot snapshot = current.get();
+            List<String> removed = new ArrayList<>();
+            Snapshot updated = snapshot.withoutDevices(deviceIds, removed);
+            if (removed.isEmpty() || current.compareAndSet(snapshot, updated)) {
+                return removed;
+            }
+        }
+    }
+
+    /**
+     * Sustituye la lista entera en una sola publicación
+     */
+    public void replaceAll(Collection<WhitelistedDevice> devices) {
+        Map<String, WhitelistedDevice> indexed = index(devices);
+        while (true) {
+            Snapshot snapshot = current.get();
+            if (current.compareAndSet(snapshot, Snapshot.build(snapshot.version + 1, indexed))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tasa de falsos positivos observada: consultas que pasaron el filtro sin estar en la lista
+     */
+    public double getObservedFalsePositiveRate() {
+        long falsePositives = bloomFalsePositives.get();
+        long negatives = bloomRejections.get() + falsePositives;
+        return negatives == 0 ? 0 : (double) falsePositives / negatives;
+    }
+
+    public long getBloomQueries() {
+        return bloomQueries.get();
+    }
+
+    public long getBloomRejections() {
+        return bloomRejections.get();
+    }
+
+    private boolean passesBloomFilter(Snapshot snapshot, long fingerprint) {
+        bloomQueries.incrementAndGet();
+        if (!snapshot.bloomFilter.mightContain(fingerprint)) {
+            // Negativo definitivo: no hace falta consultar el índice
+            bloomRejections.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean recordLookup(boolean found) {
+        if (!found) {
+            bloomFalsePositives.incrementAndGet();
+        }
+        return found;
+    }
+
+    private static Map<String, WhitelistedDevice> index(Collection<WhitelistedDevice> devices) {
+        Map<String, WhitelistedDevice> indexed = new LinkedHashMap<>();
+        for (WhitelistedDevice device : devices) {
+            if (!indexed.containsKey(device.getId())) {
+                indexed.put(device.getId(), device);
+            }
+        }
+        return indexed;
+    }
+}
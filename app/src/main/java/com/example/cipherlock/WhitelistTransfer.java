@@ -0,0 +1,384 @@
+package com.example.cipherlock;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Importación y exportación masiva de la lista blanca en CSV y JSON lines.
+ *
+ * Ambos formatos se procesan registro a registro, sin cargar el fichero en memoria.
+ * Cada registro se valida y se descarta si su ID ya se ha visto; los aceptados se
+ * entregan a un DeviceSink para que el llamante los publique de una sola vez.
+ *
+ * CSV: cabecera opcional "id,name,addedTimestamp" (columnas en cualquier orden), RFC 4180.
+ * JSON lines: un objeto {"id":...,"name":...,"addedTimestamp":...} por línea.
+ */
+public final class WhitelistTransfer {
+    public enum Format { CSV, JSON_LINES }
+
+    static final int MAX_NAME_LENGTH = 256;
+    private static final int MAX_USB_ID = 0xFFFF;
+    private static final String[] DEFAULT_COLUMNS = {"id", "name", "addedTimestamp"};
+
+    /**
+     * Resultado de una importación
+     */
+    public static class Result {
+        private int imported;
+        private int duplicates;
+        private int invalid;
+        private String firstError;
+
+        public int getImported() {
+            return imported;
+        }
+
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        public int getInvalid() {
+            return invalid;
+        }
+
+        /**
+         * Primer registro rechazado con su número y motivo, o null si no hubo errores
+         */
+        public String getFirstError() {
+            return firstError;
+        }
+
+        private void reject(long record, String reason) {
+            invalid++;
+            if (firstError == null) {
+                firstError = "Registro " + record + ": " + reason;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "importados=" + imported + " duplicados=" + duplicates + " inválidos=" + invalid;
+        }
+    }
+
+    private WhitelistTransfer() {
+    }
+
+    /**
+     * Lee los registros de reader y entrega a sink los válidos cuyo ID no esté en seenIds.
+     * seenIds se amplía con cada ID aceptado; puede venir con los IDs ya existentes.
+     * Los registros sin fecha de alta reciben importTimestamp.
+     */
+    public static Result read(Reader reader, Format format, Set<String> seenIds, long importTimestamp,
+                              WhitelistCodec.DeviceSink sink) throws IOException {
+        BufferedReader buffered = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+        Result result = new Result();
+        if (format == Format.CSV) {
+            readCsv(buffered, seenIds, importTimestamp, sink, result);
+        } else {
+            readJsonLines(buffered, seenIds, importTimestamp, sink, result);
+        }
+        return result;
+    }
+
+    /**
+     * Escribe los dispositivos en el formato indicado. Devuelve el número de registros.
+     */
+    public static int write(Writer writer, Format format, Iterable<WhitelistedDevice> devices)
+            throws IOException {
+        int count = 0;
+        if (format == Format.CSV) {
+            writer.write("id,name,addedTimestamp\n");
+            for (WhitelistedDevice device : devices) {
+                writeCsvField(writer, device.getId());
+                writer.write(',');
+                writeCsvField(writer, device.getName() != null ? device.getName() : "");
+                writer.write(',');
+                writer.write(Long.toString(device.getAddedTimestamp()));
+                writer.write('\n');
+                count++;
+            }
+        } else {
+            // Modo permisivo: varios valores de primer nivel, uno por línea
+            JsonWriter json = new JsonWriter(writer);
+            json.setLenient(true);
+            for (WhitelistedDevice device : devices) {
+                WhitelistCodec.writeDevice(json, device);
+                json.flush();
+                writer.write('\n');
+                count++;
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    /**
+     * Valida un registro. Devuelve el motivo del rechazo o null si es válido.
+     */
+    static String validate(String id, String name, long addedTimestamp) {
+        if (id == null || id.isEmpty()) {
+            return "ID vacío";
+        }
+
+        // Formato vendorId:productId:serie, con IDs USB de 16 bits
+        int firstColon = id.indexOf(':');
+        int secondColon = firstColon < 0 ? -1 : id.indexOf(':', firstColon + 1);
+        if (secondColon < 0
+                || !isUsbId(id, 0, firstColon)
+                || !isUsbId(id, firstColon + 1, secondColon)) {
+            return "ID con formato distinto de vendorId:productId:serie";
+        }
+        if (hasControlCharacters(id) || utf8Length(id) > WhitelistSnapshot.MAX_ID_BYTES) {
+            return "ID demasiado largo o con caracteres de control";
+        }
+        if (name != null && name.length() > MAX_NAME_LENGTH) {
+            return "Nombre demasiado largo";
+        }
+        if (addedTimestamp < 0) {
+            return "Fecha de alta negativa";
+        }
+        return null;
+    }
+
+    private static void readCsv(BufferedReader reader, Set<String> seenIds, long importTimestamp,
+                                WhitelistCodec.DeviceSink sink, Result result) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int idColumn = 0;
+        int nameColumn = 1;
+        int timestampColumn = 2;
+        long record = 0;
+        boolean first = true;
+
+        while (readCsvRecord(reader, fields, field)) {
+            record++;
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                // Línea en blanco
+                continue;
+            }
+
+            if (first) {
+                first = false;
+                if (DEFAULT_COLUMNS[0].equalsIgnoreCase(fields.get(0).trim())
+                        || fields.contains(DEFAULT_COLUMNS[0])) {
+                    // Cabecera: localizar las columnas por nombre
+                    idColumn = indexOfIgnoreCase(fields, DEFAULT_COLUMNS[0]);
+                    nameColumn = indexOfIgnoreCase(fields, DEFAULT_COLUMNS[1]);
+                    timestampColumn = indexOfIgnoreCase(fields, DEFAULT_COLUMNS[2]);
+                    continue;
+                }
+            }
+
+            String id = column(fields, idColumn);
+            String name = column(fields, nameColumn);
+            String timestampText = column(fields, timestampColumn);
+            long timestamp;
+            try {
+                timestamp = timestampText == null || timestampText.isEmpty()
+                        ? 0 : Long.parseLong(timestampText.trim());
+            } catch (NumberFormatException e) {
+                result.reject(record, "Fecha de alta no numérica");
+                continue;
+            }
+
+            accept(id, name, timestamp, record, seenIds, importTimestamp, sink, result);
+        }
+    }
+
+    private static void readJsonLines(BufferedReader reader, Set<String> seenIds, long importTimestamp,
+                                      WhitelistCodec.DeviceSink sink, Result result) throws IOException {
+        String line;
+        long record = 0;
+        while ((line = reader.readLine()) != null) {
+            record++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            WhitelistedDevice parsed;
+            try {
+                JsonReader json = new JsonReader(new StringReader(line));
+                parsed = WhitelistCodec.readDevice(json);
+                // Un solo objeto por línea: lo que venga detrás invalida el registro
+                if (json.peek() != JsonToken.END_DOCUMENT) {
+                    result.reject(record, "JSON no válido");
+                    continue;
+                }
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                // Solo errores de sintaxis: la línea ya está en memoria
+                result.reject(record, "JSON no válido");
+                continue;
+            }
+            if (parsed == null) {
+                result.reject(record, "ID vacío");
+                continue;
+            }
+
+            accept(parsed.getId(), parsed.getName(), parsed.getAddedTimestamp(), record,
+                    seenIds, importTimestamp, sink, result);
+        }
+    }
+
+    private static void accept(String id, String name, long timestamp, long record, Set<String> seenIds,
+                               long importTimestamp, WhitelistCodec.DeviceSink sink, Result result)
+            throws IOException {
+        String error = validate(id, name, timestamp);
+        if (error != null) {
+            result.reject(record, error);
+            return;
+        }
+        if (!seenIds.add(id)) {
+            result.duplicates++;
+            return;
+        }
+
+        String deviceName = name == null || name.isEmpty() ? "Dispositivo " + id : name;
+        sink.accept(new WhitelistedDevice(id, deviceName, timestamp != 0 ? timestamp : importTimestamp));
+        result.imported++;
+    }
+
+    /**
+     * Lee un registro CSV en fields. Admite campos entre comillas con comas, comillas
+     * dobladas y saltos de línea. Devuelve false al llegar al final sin leer nada.
+     */
+    private static boolean readCsvRecord(BufferedReader reader, List<String> fields, StringBuilder field)
+            throws IOException {
+        fields.clear();
+        field.setLength(0);
+
+        // Se lee por líneas: read() carácter a carácter sincroniza en cada llamada
+        String line = reader.readLine();
+        if (line == null) {
+            return false;
+        }
+
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    fields.add(field.toString());
+                    return true;
+                }
+                // Salto de línea dentro de comillas: el campo sigue en la línea siguiente
+                line = reader.readLine();
+                if (line == null) {
+                    // Comillas sin cerrar al final del fichero: se toma lo leído
+                    fields.add(field.toString());
+                    return true;
+                }
+                field.append('\n');
+                i = 0;
+                continue;
+            }
+
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i < line.length() && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private static int indexOfIgnoreCase(List<String> fields, String name) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).trim().toLowerCase(Locale.ROOT).equals(name.toLowerCase(Locale.ROOT))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String column(List<String> fields, int index) {
+        return index >= 0 && index < fields.size() ? fields.get(index) : null;
+    }
+
+    private static boolean isUsbId(String text, int start, int end) {
+        if (end <= start || end - start > 5) {
+            return false;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value <= MAX_USB_ID;
+    }
+
+    private static boolean hasControlCharacters(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isISOControl(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
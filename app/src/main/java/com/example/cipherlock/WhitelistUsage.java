@@ -0,0 +1,191 @@
+package com.example.cipherlock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Última conexión y número de conexiones de cada dispositivo de la lista blanca.
+ *
+ * record() solo actualiza memoria y marca la entrada como pendiente; quien persiste recoge
+ * las pendientes con drainDirty() y las escribe en lote (WhitelistLog.appendUsage), así que
+ * una conexión no cuesta ninguna escritura en disco. selectEvictions() elige qué dispositivos
+ * sobran según antigüedad y tamaño máximo, empezando por los usados hace más tiempo.
+ */
+public class WhitelistUsage {
+
+    /**
+     * Valores de un dispositivo en un instante; inmutable
+     */
+    public static final class Entry {
+        private final String deviceId;
+        private final long lastSeenTimestamp;
+        private final int hitCount;
+
+        public Entry(String deviceId, long lastSeenTimestamp, int hitCount) {
+            this.deviceId = deviceId;
+            this.lastSeenTimestamp = lastSeenTimestamp;
+            this.hitCount = hitCount;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public long getLastSeenTimestamp() {
+            return lastSeenTimestamp;
+        }
+
+        public int getHitCount() {
+            return hitCount;
+        }
+    }
+
+    private static final class Counter {
+        long lastSeen;
+        int hits;
+    }
+
+    private final Map<String, Counter> counters = new HashMap<>();
+    // Orden de la primera modificación desde el último volcado
+    private final Map<String, Counter> dirty = new LinkedHashMap<>();
+
+    /**
+     * Anota una conexión permitida por la lista blanca. Solo memoria: O(1), sin E/S.
+     */
+    public synchronized void record(String deviceId, long nowMillis) {
+        Counter counter = counters.get(deviceId);
+        if (counter == null) {
+            counter = new Counter();
+            counters.put(deviceId, counter);
+        }
+        counter.lastSeen = Math.max(counter.lastSeen, nowMillis);
+        if (counter.hits < Integer.MAX_VALUE) {
+            counter.hits++;
+        }
+        dirty.put(deviceId, counter);
+    }
+
+    /**
+     * Incorpora lo leído del disco. Las conexiones anotadas antes de la carga se suman.
+     */
+    public synchronized void load(Entry entry) {
+        Counter counter = counters.get(entry.getDeviceId());
+        if (counter == null) {
+            counter = new Counter();
+            counters.put(entry.getDeviceId(), counter);
+        }
+        counter.lastSeen = Math.max(counter.lastSeen, entry.getLastSeenTimestamp());
+        counter.hits = (int) Math.min(Integer.MAX_VALUE, (long) counter.hits + entry.getHitCount());
+    }
+
+    /**
+     * Valores actuales del dispositivo, o null si no consta ninguna conexión
+     */
+    public synchronized Entry get(String deviceId) {
+        Counter counter = counters.get(deviceId);
+        return counter != null ? new Entry(deviceId, counter.lastSeen, counter.hits) : null;
+    }
+
+    /**
+     * Devuelve las entradas modificadas desde la última llamada y las da por escritas
+     */
+    public synchronized List<Entry> drainDirty() {
+        List<Entry> entries = new ArrayList<>(dirty.size());
+        for (Map.Entry<String, Counter> item : dirty.entrySet()) {
+            entries.add(new Entry(item.getKey(), item.getValue().lastSeen, item.getValue().hits));
+        }
+        dirty.clear();
+        return entries;
+    }
+
+    /**
+     * Vuelve a marcar como pendientes entradas cuya escritura falló
+     */
+    public synchronized void markDirty(Collection<Entry> entries) {
+        for (Entry entry : entries) {
+            Counter counter = counters.get(entry.getDeviceId());
+            if (counter != null) {
+                dirty.put(entry.getDeviceId(), counter);
+            }
+        }
+    }
+
+    public synchronized boolean hasDirty() {
+        return !dirty.isEmpty();
+    }
+
+    public synchronized void remove(String deviceId) {
+        counters.remove(deviceId);
+        dirty.remove(deviceId);
+    }
+
+    /**
+     * Conserva solo los dispositivos dados (tras importar o sustituir la lista)
+     */
+    public synchronized void retainAll(Collection<WhitelistedDevice> devices) {
+        Set<String> ids = new HashSet<>();
+        for (WhitelistedDevice device : devices) {
+            ids.add(device.getId());
+        }
+        counters.keySet().retainAll(ids);
+        dirty.keySet().retainAll(ids);
+    }
+
+    public synchronized void clear() {
+        counters.clear();
+        dirty.clear();
+    }
+
+    /**
+     * Último uso del dispositivo: su última conexión, su alta o trackingSince si es posterior.
+     * trackingSince evita tratar como abandonados los dispositivos que se usaban antes de
+     * que existiera este registro.
+     */
+    public synchronized long getLastUsed(WhitelistedDevice device, long trackingSince) {
+        Counter counter = counters.get(device.getId());
+        long lastSeen = counter != null ? counter.lastSeen : 0;
+        return Math.max(Math.max(lastSeen, device.getAddedTimestamp()), trackingSince);
+    }
+
+    /**
+     * IDs a expulsar: los que llevan más de maxAgeMillis sin usarse y, si aun así se supera
+     * maxDevices, los usados hace más tiempo. Un límite <= 0 queda desactivado.
+     */
+    public List<String> selectEvictions(Collection<WhitelistedDevice> devices, int maxDevices,
+                                        long maxAgeMillis, long nowMillis, long trackingSince) {
+        List<String> evicted = new ArrayList<>();
+        Map<WhitelistedDevice, Long> lastUsed = new HashMap<>();
+        List<WhitelistedDevice> kept = new ArrayList<>(devices.size());
+
+        synchronized (this) {
+            for (WhitelistedDevice device : devices) {
+                long used = getLastUsed(device, trackingSince);
+                if (maxAgeMillis > 0 && nowMillis - used > maxAgeMillis) {
+                    evicted.add(device.getId());
+                } else {
+                    lastUsed.put(device, used);
+                    kept.add(device);
+                }
+            }
+        }
+
+        if (maxDevices > 0 && kept.size() > maxDevices) {
+            Collections.sort(kept, (a, b) -> Long.compare(lastUsed.get(a), lastUsed.get(b)));
+            for (int i = 0; i < kept.size() - maxDevices; i++) {
+                evicted.add(kept.get(i).getId());
+            }
+        }
+        return evicted;
+    }
+
+    public synchronized int size() {
+        return counters.size();
+    }
+}
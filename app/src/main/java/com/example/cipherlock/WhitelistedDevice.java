@@ -4,14 +4,20 @@ package com.example.cipherlock;
  * Clase que representa un dispositivo USB en la lista blanca
  */
 public class WhitelistedDevice {
-    private String id;
-    private String name;
-    private long addedTimestamp;
+    private final String id;
+    private final String name;
+    private final long addedTimestamp;
+
+    // Derivada del ID; no se serializa para mantener el formato guardado. Se calcula en el
+    // constructor para que los campos final la publiquen a cualquier hilo. Gson por reflexión
+    // no pasa por aquí: los dispositivos se leen con WhitelistCodec, que usa el constructor.
+    private final transient long fingerprint;
 
     public WhitelistedDevice(String id, String name, long addedTimestamp) {
         this.id = id;
         this.name = name;
         this.addedTimestamp = addedTimestamp;
+        this.fingerprint = DeviceFingerprint.of(id);
     }
 
     public String getId() {
@@ -25,4 +31,11 @@ public class WhitelistedDevice {
     public long getAddedTimestamp() {
         return addedTimestamp;
     }
+
+    /**
+     * Huella de 64 bits del ID
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * AttachIntake: cada conexión física produce una sola decisión aunque llegue repetida
+ */
+public class AttachIntakeTest {
+
+    @Test
+    public void replayedDeliveriesProduceSingleDecision() throws Exception {
+        final AttachIntake intake = new AttachIntake();
+        final AtomicInteger decisions = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        // Manifiesto, UsbAuthService y MainActivity reciben el mismo broadcast a la vez
+        Thread[] receivers = new Thread[3];
+        for (int i = 0; i < receivers.length; i++) {
+            receivers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (intake.accept(0x0781, 0x5581, 1004, 1000)) {
+                    decisions.incrementAndGet();
+                }
+            });
+            receivers[i].start();
+        }
+        start.countDown();
+        for (Thread receiver : receivers) {
+            receiver.join();
+        }
+
+        assertEquals(1, decisions.get());
+        assertEquals(2, intake.getDuplicateCount());
+    }
+
+    @Test
+    public void newAttachOfSameDeviceIsEvaluatedAgain() {
+        AttachIntake intake = new AttachIntake();
+        assertTrue(intake.accept(0x0781, 0x5581, 1004, 1000));
+        assertFalse(intake.accept(0x0781, 0x5581, 1004, 1001));
+        // Desconectar y volver a conectar: nueva secuencia
+        assertTrue(intake.accept(0x0781, 0x5581, 1005, 1002));
+        // Otro dispositivo con la misma secuencia
+        assertTrue(intake.accept(0x046D, 0xC52B, 1004, 1003));
+        assertEquals(3, intake.getAcceptedCount());
+    }
+
+    @Test
+    public void tableIsBoundedInTimeAndSize() {
+        AttachIntake intake = new AttachIntake(100, 2);
+        assertTrue(intake.accept(1, 1, 1, 0));
+        assertFalse(intake.accept(1, 1, 1, 99));
+        // Fuera de la ventana la entrada se ha olvidado
+        assertTrue(intake.accept(1, 1, 1, 100));
+
+        assertTrue(intake.accept(2, 2, 2, 101));
+        assertTrue(intake.accept(3, 3, 3, 102));
+        // Capacidad 2: la más antigua se expulsó
+        assertTrue(intake.accept(1, 1, 1, 103));
+        assertFalse(intake.accept(3, 3, 3, 104));
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * AuditLog: vuelta del anillo, rotación de ficheros y consultas
+ */
+public class AuditLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void ringWrapsAroundInOrder() throws Exception {
+        AuditLog log = new AuditLog(folder.getRoot(), 4, 1024 * 1024, 2);
+
+        // Cada consulta vacía el anillo: los huecos se reutilizan varias veces
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(log.record(AuditLog.Event.ATTACH, "d" + (round * 3 + i)));
+            }
+            assertEquals((round + 1) * 3, log.query(0, Long.MAX_VALUE, null).size());
+        }
+
+        List<AuditLog.Record> records = log.query(0, Long.MAX_VALUE, null);
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals("d" + i, records.get(i).getDeviceId());
+        }
+        assertEquals(0, log.getDroppedCount());
+    }
+
+    @Test
+    public void droppedEventsAreCountedAndOrderKept() throws Exception {
+        AuditLog log = new AuditLog(folder.getRoot(), 8, 1024 * 1024, 2);
+        int total = 1000;
+        for (int i = 0; i < total; i++) {
+            log.record(AuditLog.Event.WHITELIST_HIT, "d" + i);
+        }
+
+        // El escritor puede vaciar el anillo a la vez: lo que no se escribe se cuenta
+        List<AuditLog.Record> records = log.query(0, Long.MAX_VALUE, null);
+        assertEquals(total, records.size() + log.getDroppedCount());
+        int previous = -1;
+        for (AuditLog.Record record : records) {
+            int index = Integer.parseInt(record.getDeviceId().substring(1));
+            assertTrue(index > previous);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void rotationKeepsNewestFiles() throws Exception {
+        File directory = new File(folder.getRoot(), "audit");
+        AuditLog log = new AuditLog(directory, 64, 100, 3);
+        for (int i = 0; i < 30; i++) {
+            log.record(AuditLog.Event.PROMPT, "1:2:" + i);
+        }
+
+        List<AuditLog.Record> records = log.query(0, Long.MAX_VALUE, null);
+        assertTrue(new File(directory, "audit-2.log").exists());
+        assertFalse(new File(directory, "audit-3.log").exists());
+        // Los más antiguos se eliminaron al rotar; los que quedan siguen en orden
+        assertTrue(records.size() < 30);
+        assertEquals("1:2:29", records.get(records.size() - 1).getDeviceId());
+        int first = 30 - records.size();
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals("1:2:" + (first + i), records.get(i).getDeviceId());
+        }
+    }
+
+    @Test
+    public void queryFiltersByDeviceAndTime() throws Exception {
+        AuditLog log = new AuditLog(folder.getRoot(), 16, 1024 * 1024, 2);
+        long before = System.currentTimeMillis();
+        log.record(AuditLog.Event.ATTACH, 1921, 21889, "4C530001");
+        log.record(AuditLog.Event.PASSWORD_SUCCESS, "1921:21889:4C530001");
+        log.record(AuditLog.Event.ATTACH, "1:2:B");
+        log.record(AuditLog.Event.WHITELIST_EVICT, "con\ttabulador");
+
+        // El ID formateado desde los campos coincide con el de texto
+        List<AuditLog.Record> device = log.query(0, Long.MAX_VALUE, "1921:21889:4C530001");
+        assertEquals(2, device.size());
+        assertEquals(AuditLog.Event.ATTACH, device.get(0).getEvent());
+        assertEquals(AuditLog.Event.PASSWORD_SUCCESS, device.get(1).getEvent());
+        assertTrue(device.get(0).getTimestamp() >= before);
+
+        List<AuditLog.Record> escaped = log.query(0, Long.MAX_VALUE, "con tabulador");
+        assertEquals(1, escaped.size());
+        assertEquals(AuditLog.Event.WHITELIST_EVICT, escaped.get(0).getEvent());
+
+        assertEquals(4, log.query(before, Long.MAX_VALUE, null).size());
+        assertEquals(0, log.query(0, before - 1, null).size());
+        assertEquals(0, log.query(0, Long.MAX_VALUE, "9:9:Z").size());
+    }
+
+    @Test
+    public void deviceSerialCannotForgeRecords() throws Exception {
+        AuditLog log = new AuditLog(folder.getRoot(), 16, 1024 * 1024, 2);
+        log.record(AuditLog.Event.ATTACH, 1921, 21889, "SN\n1\tPASSWORD_SUCCESS\t9:9:Z");
+
+        List<AuditLog.Record> records = log.query(0, Long.MAX_VALUE, null);
+        assertEquals(1, records.size());
+        assertEquals(AuditLog.Event.ATTACH, records.get(0).getEvent());
+        assertEquals("1921:21889:SN 1 PASSWORD_SUCCESS 9:9:Z", records.get(0).getDeviceId());
+
+        List<String> lines = Files.readAllLines(new File(folder.getRoot(), "audit-0.log").toPath(),
+                StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith("\tATTACH\t1921:21889:SN 1 PASSWORD_SUCCESS 9:9:Z"));
+    }
+}
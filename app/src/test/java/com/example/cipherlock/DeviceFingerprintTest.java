@@ -0,0 +1,47 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * DeviceFingerprint: la huella desde los campos coincide con la del ID de texto
+ */
+public class DeviceFingerprintTest {
+
+    @Test
+    public void fieldsAndTextIdGiveSameFingerprint() {
+        int[][] ids = {{0, 0}, {1, 2}, {1921, 21889}, {65535, 65535}, {10, 100}, {-1, 7}};
+        String[] serials = {null, "", "4C530001", "serie ñ", "a:b"};
+        for (int[] id : ids) {
+            for (String serial : serials) {
+                String deviceId = DeviceFingerprint.toDeviceId(id[0], id[1], serial);
+                assertEquals(deviceId, DeviceFingerprint.of(deviceId),
+                        DeviceFingerprint.of(id[0], id[1], serial));
+            }
+        }
+        assertEquals("1921:21889:4C530001", DeviceFingerprint.toDeviceId(1921, 21889, "4C530001"));
+        assertEquals("1:2:", DeviceFingerprint.toDeviceId(1, 2, null));
+        assertNotEquals(DeviceFingerprint.of(1, 23, "4"), DeviceFingerprint.of(12, 3, "4"));
+    }
+
+    @Test
+    public void matchesComparesEveryField() {
+        assertTrue(DeviceFingerprint.matches("1921:21889:4C530001", 1921, 21889, "4C530001"));
+        assertTrue(DeviceFingerprint.matches("1:2:", 1, 2, null));
+        assertTrue(DeviceFingerprint.matches("1:2:", 1, 2, ""));
+        assertTrue(DeviceFingerprint.matches("-1:7:x", -1, 7, "x"));
+
+        assertFalse(DeviceFingerprint.matches("1921:21889:4C530001", 1921, 21889, "4C530002"));
+        assertFalse(DeviceFingerprint.matches("1921:21889:4C530001", 1921, 21888, "4C530001"));
+        assertFalse(DeviceFingerprint.matches("1921:21889:4C530001", 192, 21889, "4C530001"));
+        assertFalse(DeviceFingerprint.matches("1921:21889:4C530001", 1921, 21889, "4C53000"));
+        assertFalse(DeviceFingerprint.matches("1921:21889:4C530001", 1921, 21889, null));
+        assertFalse(DeviceFingerprint.matches("1:2", 1, 2, null));
+        assertFalse(DeviceFingerprint.matches("12:3:4", 1, 23, "4"));
+        assertFalse(DeviceFingerprint.matches("", 0, 0, null));
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * LongHashMap: crecimiento, sustitución, borrado y la clave 0
+ */
+public class LongHashMapTest {
+
+    @Test
+    public void growsPastInitialCapacity() {
+        LongHashMap<String> map = new LongHashMap<>(4);
+        for (long key = 1; key <= 1000; key++) {
+            assertNull(map.put(key * 0x9E3779B97F4A7C15L, "v" + key));
+        }
+        assertEquals(1000, map.size());
+        for (long key = 1; key <= 1000; key++) {
+            assertEquals("v" + key, map.get(key * 0x9E3779B97F4A7C15L));
+        }
+        assertNull(map.get(1001 * 0x9E3779B97F4A7C15L));
+    }
+
+    @Test
+    public void putReplacesExistingValue() {
+        LongHashMap<String> map = new LongHashMap<>();
+        assertNull(map.put(7, "uno"));
+        assertEquals("uno", map.put(7, "dos"));
+        assertEquals("dos", map.get(7));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void zeroIsAnOrdinaryKey() {
+        // Los huecos vacíos se marcan con valor null, no con la clave 0
+        LongHashMap<String> map = new LongHashMap<>();
+        assertNull(map.get(0));
+        assertFalse(map.containsKey(0));
+
+        map.put(0, "cero");
+        map.put(16, "dieciséis");
+        assertTrue(map.containsKey(0));
+        assertEquals("cero", map.get(0));
+        assertEquals("cero", map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals("dieciséis", map.get(16));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomOperations() {
+        // Claves en un rango pequeño para forzar colisiones y borrados en mitad de un sondeo
+        Random random = new Random(42);
+        LongHashMap<Long> map = new LongHashMap<>(8);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(256) - 128;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                long value = random.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = -128; key < 128; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(expected.keySet().iterator().next()));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        LongHashMap<String> original = new LongHashMap<>();
+        for (long key = 0; key < 20; key++) {
+            original.put(key, "v" + key);
+        }
+        LongHashMap<String> copy = new LongHashMap<>(original);
+        copy.remove(3);
+        copy.put(100, "nuevo");
+        copy.put(4, "cambiado");
+
+        assertEquals(20, original.size());
+        assertEquals("v3", original.get(3));
+        assertNull(original.get(100));
+        assertEquals("v4", original.get(4));
+        assertEquals(20, copy.size());
+        assertNull(copy.get(3));
+        assertEquals("cambiado", copy.get(4));
+        assertEquals("v19", copy.get(19));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullValueIsRejected() {
+        new LongHashMap<String>().put(1, null);
+    }
+}
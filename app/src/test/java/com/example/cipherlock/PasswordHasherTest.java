@@ -0,0 +1,69 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import org.junit.Test;
+
+/**
+ * PBKDF2-HMAC-SHA256, formato almacenado y actualización de hashes de PasswordHasher
+ */
+public class PasswordHasherTest {
+    private static final byte[] SALT = "salt".getBytes(Charset.forName("UTF-8"));
+
+    @Test
+    public void pbkdf2MatchesReferenceVectors() {
+        assertArrayEquals(hex("120fb6cffcf8b32c43e7225256c4f837a86548c92ccc35480805987cb70be17b"),
+                PasswordHasher.pbkdf2("password", SALT, 1));
+        assertArrayEquals(hex("ae4d0c95af6b46d32d0adff928f06dd02a303f8ef3c251dfd6e2d85a95474c43"),
+                PasswordHasher.pbkdf2("password", SALT, 2));
+        assertArrayEquals(hex("c5e478d59288c841aa530db6845c4c8d962893a001ce4e11a4963873aa98134a"),
+                PasswordHasher.pbkdf2("password", SALT, 4096));
+    }
+
+    @Test
+    public void hashVerifiesOnlyTheSamePassword() {
+        String stored = PasswordHasher.hash("contraseña", 1000);
+        assertTrue(stored.startsWith("pbkdf2-sha256$1000$"));
+        assertTrue(PasswordHasher.verify("contraseña", stored));
+        assertFalse(PasswordHasher.verify("contraseñA", stored));
+        assertFalse(PasswordHasher.verify("", stored));
+
+        // Sal nueva en cada hash
+        assertNotEquals(stored, PasswordHasher.hash("contraseña", 1000));
+        assertFalse(PasswordHasher.verify("contraseña", "pbkdf2-sha256$1000$zz$00"));
+        assertFalse(PasswordHasher.verify("contraseña", "pbkdf2-sha256$x"));
+    }
+
+    @Test
+    public void legacyPlaintextAndUpgrade() {
+        assertTrue(PasswordHasher.verify("1234", "1234"));
+        assertFalse(PasswordHasher.verify("12345", "1234"));
+        assertTrue(PasswordHasher.needsUpgrade("1234", 1000));
+
+        String stored = PasswordHasher.hash("1234", 1000);
+        assertEquals(1000, PasswordHasher.getIterations(stored));
+        assertFalse(PasswordHasher.needsUpgrade(stored, 1000));
+        assertTrue(PasswordHasher.needsUpgrade(stored, 2000));
+    }
+
+    @Test
+    public void calibrationStaysWithinBounds() {
+        int iterations = PasswordHasher.calibrate(1);
+        assertTrue(iterations >= PasswordHasher.MIN_ITERATIONS);
+        assertTrue(iterations <= PasswordHasher.MAX_ITERATIONS);
+        assertEquals(0, iterations % 1000);
+    }
+
+    private static byte[] hex(String text) {
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(text.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Plazos, reintentos y bloqueo final de PendingAuthScheduler sin interfaz
+ */
+public class PendingAuthSchedulerTest {
+    private static final long TIMEOUT = 60;
+
+    private final List<String> retries = new CopyOnWriteArrayList<>();
+    private final List<String> blocks = new CopyOnWriteArrayList<>();
+
+    private final PendingAuthScheduler.Callback callback = new PendingAuthScheduler.Callback() {
+        @Override
+        public void onRetry(String deviceId, String deviceName) {
+            retries.add(deviceId);
+        }
+
+        @Override
+        public void onFinalBlock(String deviceId, long fingerprint, PendingAuthScheduler.Outcome outcome) {
+            blocks.add(deviceId + ":" + outcome);
+        }
+    };
+
+    @Test
+    public void unattendedRequestIsRetriedThenBlocked() throws Exception {
+        PendingAuthScheduler scheduler = new PendingAuthScheduler(TIMEOUT, 1, 3, callback);
+        CountDownLatch resolved = awaitResolution(scheduler, 1);
+
+        assertTrue(scheduler.submit("1:2:A", 1, "Llave"));
+        assertFalse(scheduler.submit("1:2:A", 1, "Llave"));
+
+        assertTrue(resolved.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("1:2:A"), retries);
+        assertEquals(Collections.singletonList("1:2:A:TIMEOUT"), blocks);
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void attachedRequestTimesOutWithoutRetry() throws Exception {
+        PendingAuthScheduler scheduler = new PendingAuthScheduler(TIMEOUT, 1, 3, callback);
+        CountDownLatch resolved = awaitResolution(scheduler, 2);
+
+        scheduler.submit("1:2:A", 1, "Llave");
+        scheduler.attach(Collections.singletonList("1:2:A"));
+        Thread.sleep(TIMEOUT / 2);
+        scheduler.submit("3:4:B", 2, "Teclado");
+        scheduler.attach(Collections.singletonList("3:4:B"));
+
+        long remaining = scheduler.getRemainingMillis(Arrays.asList("1:2:A", "3:4:B"));
+        assertTrue(remaining >= 0 && remaining <= TIMEOUT);
+
+        assertTrue(resolved.await(5, TimeUnit.SECONDS));
+        assertTrue(retries.isEmpty());
+        // Orden de plazo
+        assertEquals(Arrays.asList("1:2:A:TIMEOUT", "3:4:B:TIMEOUT"), blocks);
+    }
+
+    @Test
+    public void failuresAllowAndCancel() throws Exception {
+        PendingAuthScheduler scheduler = new PendingAuthScheduler(10000, 1, 3, callback);
+        List<String> ids = Collections.singletonList("1:2:A");
+
+        scheduler.submit("1:2:A", 1, "Llave");
+        assertEquals(2, scheduler.recordFailure(ids));
+        assertEquals(1, scheduler.recordFailure(ids));
+        assertEquals(0, scheduler.recordFailure(ids));
+        assertEquals(Collections.singletonList("1:2:A:TOO_MANY_FAILURES"), blocks);
+
+        scheduler.submit("1:2:A", 1, "Llave");
+        scheduler.allow(ids);
+        assertEquals(1, blocks.size());
+        assertEquals(-1, scheduler.getRemainingMillis(ids));
+
+        scheduler.submit("1:2:A", 1, "Llave");
+        scheduler.cancel(ids);
+        scheduler.cancel(ids);
+        assertEquals("1:2:A:CANCELLED", blocks.get(1));
+        assertEquals(2, blocks.size());
+        assertTrue(retries.isEmpty());
+    }
+
+    @Test
+    public void allowReturnsOnlyRequestsStillPending() throws Exception {
+        PendingAuthScheduler scheduler = new PendingAuthScheduler(TIMEOUT, 0, 3, callback);
+        CountDownLatch resolved = awaitResolution(scheduler, 1);
+
+        scheduler.submit("1:2:A", 1, "Llave");
+        assertTrue(resolved.await(5, TimeUnit.SECONDS));
+        scheduler.submit("3:4:B", 2, "Teclado");
+
+        // La contraseña llega después del plazo de A: solo B se permite
+        List<String> allowed = scheduler.allow(Arrays.asList("1:2:A", "3:4:B"));
+        assertEquals(Collections.singletonList("3:4:B"), allowed);
+        assertEquals(Collections.singletonList("1:2:A:TIMEOUT"), blocks);
+        assertEquals(0, scheduler.size());
+    }
+
+    private static CountDownLatch awaitResolution(PendingAuthScheduler scheduler, int count) {
+        final CountDownLatch latch = new CountDownLatch(count);
+        scheduler.addListener(new PendingAuthScheduler.Listener() {
+            @Override
+            public void onResolved(String deviceId, PendingAuthScheduler.Outcome outcome) {
+                latch.countDown();
+            }
+        });
+        return latch;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Caducidad de TimingWheel en todos los niveles de la rueda
+ */
+public class TimingWheelTest {
+    private static final long TICK = 1000;
+    private static final long START = 1700000000000L;
+
+    @Test
+    public void expiresEachKeyOnItsDeadlineTick() {
+        TimingWheel wheel = new TimingWheel(TICK, START);
+        Random random = new Random(7);
+        final Map<Long, Long> expiredAt = new HashMap<>();
+        Map<Long, Long> deadlines = new HashMap<>();
+
+        long now = START;
+        for (long key = 1; key <= 2000; key++) {
+            // Plazos repartidos por los tres primeros niveles (hasta ~3 días)
+            long delay = 1 + (long) (random.nextDouble() * 300000) * TICK;
+            wheel.schedule(key, now, delay);
+            deadlines.put(key, now + delay);
+            for (int step = random.nextInt(3); step > 0; step--) {
+                now += TICK;
+                advance(wheel, now, expiredAt);
+            }
+        }
+
+        long end = now + 300001 * TICK;
+        while (now < end) {
+            now += TICK;
+            advance(wheel, now, expiredAt);
+        }
+
+        assertEquals(0, wheel.size());
+        assertEquals(deadlines.size(), expiredAt.size());
+        for (Map.Entry<Long, Long> entry : deadlines.entrySet()) {
+            long expiry = expiredAt.get(entry.getKey());
+            long deadline = entry.getValue();
+            assertTrue("clave " + entry.getKey() + " antes de tiempo", expiry >= deadline);
+            assertTrue("clave " + entry.getKey() + " tarde", expiry < deadline + TICK);
+        }
+    }
+
+    @Test
+    public void rescheduleAndCancel() {
+        TimingWheel wheel = new TimingWheel(TICK, START);
+        final Map<Long, Long> expiredAt = new HashMap<>();
+
+        wheel.schedule(1, START, 5 * TICK);
+        wheel.schedule(2, START, 5 * TICK);
+        wheel.schedule(1, START, 100 * TICK);
+        assertTrue(wheel.cancel(2));
+        assertFalse(wheel.cancel(2));
+
+        advance(wheel, START + 10 * TICK, expiredAt);
+        assertTrue(expiredAt.isEmpty());
+        assertTrue(wheel.isActive(1, START + 10 * TICK));
+
+        // El plazo exacto manda aunque la rueda no haya avanzado
+        assertFalse(wheel.isActive(1, START + 100 * TICK));
+
+        advance(wheel, START + 100 * TICK, expiredAt);
+        assertEquals(Long.valueOf(START + 100 * TICK), expiredAt.get(1L));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void idleWheelCatchesUpWithoutReplayingTicks() {
+        TimingWheel wheel = new TimingWheel(TICK, START);
+        final Map<Long, Long> expiredAt = new HashMap<>();
+
+        long later = START + 30L * 24 * 3600 * TICK;
+        wheel.schedule(9, later, 3 * TICK);
+        advance(wheel, later + 2 * TICK, expiredAt);
+        assertTrue(expiredAt.isEmpty());
+        advance(wheel, later + 3 * TICK, expiredAt);
+        assertEquals(Long.valueOf(later + 3 * TICK), expiredAt.get(9L));
+    }
+
+    private static void advance(TimingWheel wheel, final long now, final Map<Long, Long> expiredAt) {
+        wheel.advance(now, new TimingWheel.ExpiryListener() {
+            @Override
+            public void onExpired(long key) {
+                expiredAt.put(key, now);
+            }
+        });
+    }
+}
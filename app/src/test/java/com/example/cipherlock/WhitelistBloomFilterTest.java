@@ -0,0 +1,67 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * WhitelistBloomFilter: sin falsos negativos y con la tasa de falsos positivos prevista
+ */
+public class WhitelistBloomFilterTest {
+
+    @Test
+    public void addedFingerprintsAreAlwaysFound() {
+        WhitelistBloomFilter filter = new WhitelistBloomFilter(1000);
+        for (int i = 0; i < 1000; i++) {
+            filter.add(DeviceFingerprint.of(i, i * 7, "SN" + i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain(DeviceFingerprint.of(i, i * 7, "SN" + i)));
+        }
+        assertTrue(filter.isFull());
+        assertEquals(1000, filter.getCount());
+    }
+
+    @Test
+    public void falsePositiveRateStaysNearTarget() {
+        Random random = new Random(7);
+        WhitelistBloomFilter filter = new WhitelistBloomFilter(2000);
+        Set<Long> added = new HashSet<>();
+        while (added.size() < 2000) {
+            long hash = random.nextLong();
+            added.add(hash);
+            filter.add(hash);
+        }
+
+        int falsePositives = 0;
+        int queries = 100000;
+        for (int i = 0; i < queries; i++) {
+            long hash = random.nextLong();
+            if (!added.contains(hash) && filter.mightContain(hash)) {
+                falsePositives++;
+            }
+        }
+        // Objetivo del 1% a plena capacidad, con margen
+        assertTrue("falsos positivos: " + falsePositives, falsePositives < queries * 0.02);
+        assertTrue(filter.getEstimatedFalsePositiveRate() < 0.02);
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        WhitelistBloomFilter original = new WhitelistBloomFilter(64);
+        original.add(1L);
+        WhitelistBloomFilter copy = new WhitelistBloomFilter(original);
+        copy.add(DeviceFingerprint.of("1:2:A"));
+
+        assertTrue(copy.mightContain(1L));
+        assertTrue(copy.mightContain(DeviceFingerprint.of("1:2:A")));
+        assertFalse(original.mightContain(DeviceFingerprint.of("1:2:A")));
+        assertEquals(1, original.getCount());
+        assertEquals(2, copy.getCount());
+    }
+}
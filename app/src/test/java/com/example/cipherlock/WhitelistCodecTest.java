@@ -0,0 +1,79 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Compatibilidad de WhitelistCodec con el JSON que generaba Gson
+ */
+public class WhitelistCodecTest {
+
+    @Test
+    public void readsGsonOutput() throws Exception {
+        List<WhitelistedDevice> devices = sampleDevices();
+        String json = new Gson().toJson(devices);
+
+        List<WhitelistedDevice> parsed = WhitelistCodec.read(new StringReader(json));
+
+        assertSameDevices(devices, parsed);
+    }
+
+    @Test
+    public void writesJsonReadableByGson() throws Exception {
+        List<WhitelistedDevice> devices = sampleDevices();
+        StringWriter writer = new StringWriter();
+        WhitelistCodec.write(writer, devices);
+
+        WhitelistedDevice[] parsed = new Gson().fromJson(writer.toString(), WhitelistedDevice[].class);
+
+        assertEquals(devices.size(), parsed.length);
+        for (int i = 0; i < parsed.length; i++) {
+            assertEquals(devices.get(i).getId(), parsed[i].getId());
+            assertEquals(devices.get(i).getName(), parsed[i].getName());
+            assertEquals(devices.get(i).getAddedTimestamp(), parsed[i].getAddedTimestamp());
+        }
+    }
+
+    @Test
+    public void skipsUnknownFieldsAndNullEntries() throws Exception {
+        String json = "[{\"id\":\"1:2:A\",\"extra\":{\"x\":[1,2]},\"name\":null,\"addedTimestamp\":5},"
+                + "null,{\"name\":\"sin id\"}]";
+
+        List<WhitelistedDevice> parsed = WhitelistCodec.read(new StringReader(json));
+
+        assertEquals(1, parsed.size());
+        assertEquals("1:2:A", parsed.get(0).getId());
+        assertNull(parsed.get(0).getName());
+        assertEquals(5, parsed.get(0).getAddedTimestamp());
+    }
+
+    @Test
+    public void readsNullDocumentAsEmpty() throws Exception {
+        assertTrue(WhitelistCodec.read(new StringReader("null")).isEmpty());
+    }
+
+    private static List<WhitelistedDevice> sampleDevices() {
+        List<WhitelistedDevice> devices = new ArrayList<>();
+        devices.add(new WhitelistedDevice("1234:5678:ABC", "Teclado \"USB\" ñ", 1700000000000L));
+        devices.add(new WhitelistedDevice("1:2:", "Lector <=> 2", 0));
+        devices.add(new WhitelistedDevice("65535:65535:é中", null, Long.MAX_VALUE));
+        return devices;
+    }
+
+    private static void assertSameDevices(List<WhitelistedDevice> expected, List<WhitelistedDevice> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getName(), actual.get(i).getName());
+            assertEquals(expected.get(i).getAddedTimestamp(), actual.get(i).getAddedTimestamp());
+        }
+    }
+}
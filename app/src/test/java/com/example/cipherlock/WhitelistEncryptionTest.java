@@ -0,0 +1,135 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Lista blanca cifrada en disco: registros sellados en el log e índice con clave en la instantánea
+ */
+public class WhitelistEncryptionTest {
+    private static final String ID = "1921:21889:4C530001";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static RecordCipher newCipher() throws Exception {
+        return new RecordCipher(RecordCipher.generateKey(), RecordCipher.generateKey());
+    }
+
+    private static boolean fileContains(File file, String text) throws Exception {
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+        return content.contains(new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void plaintextLogIsMigratedAndReplayed() throws Exception {
+        File file = folder.newFile("whitelist.log");
+        file.delete();
+        WhitelistLog plain = new WhitelistLog(file);
+        plain.open();
+        plain.appendAdd(new WhitelistedDevice(ID, "Memoria USB", 1000));
+        plain.close();
+        assertTrue(fileContains(file, ID));
+
+        RecordCipher cipher = newCipher();
+        WhitelistLog sealed = new WhitelistLog(file, cipher);
+        assertEquals(1, sealed.open().size());
+        sealed.appendAdd(new WhitelistedDevice("1:2:B", "Teclado", 2000));
+        sealed.appendRemove("1:2:B");
+        sealed.close();
+        assertFalse(fileContains(file, ID));
+        assertFalse(fileContains(file, "Memoria USB"));
+
+        List<WhitelistedDevice> devices = new WhitelistLog(file, cipher).open();
+        assertEquals(1, devices.size());
+        assertEquals(ID, devices.get(0).getId());
+        assertEquals("Memoria USB", devices.get(0).getName());
+        assertEquals(1000, devices.get(0).getAddedTimestamp());
+    }
+
+    @Test
+    public void wrongKeyIsReportedWithoutTruncating() throws Exception {
+        File file = folder.newFile("whitelist.log");
+        file.delete();
+        WhitelistLog log = new WhitelistLog(file, newCipher());
+        log.open();
+        log.appendAdd(new WhitelistedDevice(ID, "Memoria USB", 1000));
+        log.close();
+        long length = file.length();
+
+        try {
+            new WhitelistLog(file, newCipher()).open();
+            fail("Se esperaba UnreadableLogException");
+        } catch (WhitelistLog.UnreadableLogException expected) {
+            assertEquals(length, file.length());
+        }
+    }
+
+    @Test
+    public void sealedLogWithoutKeyIsLeftIntact() throws Exception {
+        File file = folder.newFile("whitelist.log");
+        file.delete();
+        WhitelistLog log = new WhitelistLog(file, newCipher());
+        log.open();
+        log.appendAdd(new WhitelistedDevice(ID, "Memoria USB", 1000));
+        log.close();
+        byte[] before = Files.readAllBytes(file.toPath());
+
+        WhitelistLog withoutKey = new WhitelistLog(file);
+        try {
+            withoutKey.open();
+            fail("Se esperaba UnreadableLogException");
+        } catch (WhitelistLog.UnreadableLogException expected) {
+            // Nada se escribe sobre un log que no se pudo leer
+        }
+        try {
+            withoutKey.appendAdd(new WhitelistedDevice("1:2:B", "Teclado", 2000));
+            fail("Se esperaba IOException");
+        } catch (IOException expected) {
+            assertTrue(Arrays.equals(before, Files.readAllBytes(file.toPath())));
+        }
+    }
+
+    @Test
+    public void keyedSnapshotAnswersWithoutStoringIds() throws Exception {
+        RecordCipher cipher = newCipher();
+        List<WhitelistedDevice> devices = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            devices.add(new WhitelistedDevice(i + ":" + (i * 3) + ":SN" + i, "Dispositivo " + i, i));
+        }
+        devices.add(new WhitelistedDevice(ID, "Memoria USB", 1000));
+
+        File file = folder.newFile("whitelist.snapshot");
+        assertTrue(WhitelistSnapshot.write(file, devices, 7, 42, cipher));
+        assertFalse(fileContains(file, ID));
+        assertNull(WhitelistSnapshot.open(file));
+
+        WhitelistSnapshot snapshot = WhitelistSnapshot.open(file, cipher);
+        assertNotNull(snapshot);
+        assertTrue(snapshot.isCurrent(7, 42));
+        assertEquals(101, snapshot.size());
+        for (WhitelistedDevice device : devices) {
+            assertTrue(snapshot.contains(device.getId()));
+        }
+        assertTrue(snapshot.contains(0L, 1921, 21889, "4C530001"));
+        assertFalse(snapshot.contains(0L, 1921, 21889, "4C530002"));
+        assertFalse(snapshot.contains("5:15:SN6"));
+        // Otra clave produce otro índice
+        assertFalse(Arrays.equals(cipher.indexOf(ID), newCipher().indexOf(ID)));
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * WhitelistLog: recuperación tras un corte, compactación y cabeceras no válidas
+ */
+public class WhitelistLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File newLogFile() {
+        return new File(folder.getRoot(), "whitelist.log");
+    }
+
+    private static WhitelistedDevice device(int index) {
+        return new WhitelistedDevice("1:" + index + ":SN" + index, "Dispositivo " + index, 1000 + index);
+    }
+
+    @Test
+    public void truncatedTailIsDiscardedOnOpen() throws Exception {
+        File file = newLogFile();
+        WhitelistLog log = new WhitelistLog(file);
+        log.open();
+        log.appendAdd(device(1));
+        log.appendAdd(device(2));
+        long validLength = log.getLength();
+        log.appendAdd(device(3));
+        log.close();
+
+        // Corte de energía a mitad del último registro
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        WhitelistLog reopened = new WhitelistLog(file);
+        List<WhitelistedDevice> devices = reopened.open();
+        assertEquals(2, devices.size());
+        assertEquals(validLength, file.length());
+
+        // El log sigue admitiendo escrituras tras la recuperación
+        reopened.appendAdd(device(4));
+        reopened.close();
+        assertEquals(3, new WhitelistLog(file).open().size());
+    }
+
+    @Test
+    public void recordWithBadCrcIsDiscardedOnOpen() throws Exception {
+        File file = newLogFile();
+        WhitelistLog log = new WhitelistLog(file);
+        log.open();
+        log.appendAdd(device(1));
+        long validLength = log.getLength();
+        log.appendAdd(device(2));
+        log.close();
+
+        // Un byte alterado en el nombre del último registro
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+
+        List<WhitelistedDevice> devices = new WhitelistLog(file).open();
+        assertEquals(1, devices.size());
+        assertEquals(device(1).getId(), devices.get(0).getId());
+        assertEquals(validLength, file.length());
+    }
+
+    @Test
+    public void compactionKeepsLiveRecordsAndBumpsGeneration() throws Exception {
+        File file = newLogFile();
+        WhitelistLog log = new WhitelistLog(file);
+        log.open();
+        for (int i = 0; i < 10; i++) {
+            log.appendAdd(device(i));
+        }
+        // Menos de MIN_DEAD_RECORDS muertos: la compactación automática no se dispara
+        log.appendRemove(device(3).getId());
+        log.appendRemoveAll(Arrays.asList(device(5).getId(), device(7).getId()));
+        long generation = log.getGeneration();
+        long lengthBefore = log.getLength();
+
+        log.compact();
+
+        assertEquals(generation + 1, log.getGeneration());
+        assertEquals(generation + 1, WhitelistLog.readGeneration(file));
+        assertTrue(log.getLength() < lengthBefore);
+        assertEquals(log.getLength(), file.length());
+
+        // Las escrituras posteriores van al fichero compactado
+        log.appendAdd(device(20));
+        log.close();
+
+        List<WhitelistedDevice> devices = new WhitelistLog(file).open();
+        assertEquals(8, devices.size());
+        assertEquals(device(0).getId(), devices.get(0).getId());
+        assertEquals(device(20).getId(), devices.get(7).getId());
+        Set<String> ids = new HashSet<>();
+        for (WhitelistedDevice live : devices) {
+            ids.add(live.getId());
+        }
+        assertFalse(ids.contains(device(3).getId()));
+        assertFalse(ids.contains(device(5).getId()));
+        assertFalse(ids.contains(device(7).getId()));
+    }
+
+    @Test
+    public void unreadableHeaderIsRejected() throws Exception {
+        File file = newLogFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(ByteBuffer.allocate(WhitelistLog.FILE_HEADER_SIZE).putInt(0x12345678).array());
+        }
+        assertEquals(-1, WhitelistLog.readGeneration(file));
+        try {
+            new WhitelistLog(file).open();
+            fail("Se esperaba IOException por la cabecera");
+        } catch (IOException expected) {
+            // El fichero no se trunca ni se sustituye
+            assertEquals(WhitelistLog.FILE_HEADER_SIZE, file.length());
+        }
+
+        // Magic correcto con una versión desconocida
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(ByteBuffer.allocate(WhitelistLog.FILE_HEADER_SIZE)
+                    .putInt(0x434C574C).putShort((short) 99).array());
+        }
+        assertEquals(-1, WhitelistLog.readGeneration(file));
+        try {
+            new WhitelistLog(file).open();
+            fail("Se esperaba IOException por la versión");
+        } catch (IOException expected) {
+            assertEquals(WhitelistLog.FILE_HEADER_SIZE, file.length());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * WhitelistRuleEngine: prioridad de la denegación y tablas por vendorId y por clase USB
+ */
+public class WhitelistRuleEngineTest {
+    private static final int MASS_STORAGE = 0x08;
+    private static final int HID = 0x03;
+    private static final int[] NO_CLASSES = new int[0];
+
+    private static WhitelistRule allowVendor(int vendorId) {
+        return new WhitelistRule(vendorId, null, null, null, null, null, true, "Fabricante");
+    }
+
+    private static WhitelistRule denyClass(int usbClass, Integer usbSubclass) {
+        return new WhitelistRule(null, null, null, usbClass, usbSubclass, null, false, "Clase");
+    }
+
+    @Test
+    public void denyRuleBeatsAllowRule() {
+        WhitelistRuleEngine engine = new WhitelistRuleEngine(Arrays.asList(
+                allowVendor(1921),
+                new WhitelistRule(1921, 100, 200, null, null, null, false, "Modelos bloqueados"),
+                // Genérica: permite cualquier serie que empiece por "OK"
+                new WhitelistRule(null, null, null, null, null, "OK", true, "Serie")));
+
+        assertEquals(WhitelistRuleEngine.Decision.ALLOW, engine.evaluate(1921, 50, "X", NO_CLASSES, 0));
+        assertEquals(WhitelistRuleEngine.Decision.DENY, engine.evaluate(1921, 150, "X", NO_CLASSES, 0));
+        // La denegación por fabricante gana también a una regla genérica que permite
+        assertEquals(WhitelistRuleEngine.Decision.DENY, engine.evaluate(1921, 150, "OK1", NO_CLASSES, 0));
+        assertEquals(WhitelistRuleEngine.Decision.ALLOW, engine.evaluate(7, 150, "OK1", NO_CLASSES, 0));
+        assertEquals(WhitelistRuleEngine.Decision.NO_MATCH, engine.evaluate(7, 150, "NO", NO_CLASSES, 0));
+        assertFalse(engine.usesClasses());
+    }
+
+    @Test
+    public void classBucketMatchesDeviceAndInterfaceClasses() {
+        WhitelistRuleEngine engine = new WhitelistRuleEngine(Arrays.asList(
+                allowVendor(1921),
+                denyClass(MASS_STORAGE, 0x06),
+                new WhitelistRule(null, null, null, HID, null, null, true, "Teclados y ratones")));
+        assertTrue(engine.usesClasses());
+
+        int[] storage = {MASS_STORAGE << 8 | 0x06};
+        int[] keyboard = {0, HID << 8 | 0x01};
+        int[] composite = {HID << 8 | 0x01, MASS_STORAGE << 8 | 0x06};
+
+        // Un permiso por fabricante no salva a un dispositivo de una clase denegada
+        assertEquals(WhitelistRuleEngine.Decision.DENY, engine.evaluate(1921, 1, null, storage, 1));
+        assertEquals(WhitelistRuleEngine.Decision.ALLOW, engine.evaluate(5, 1, null, keyboard, 2));
+        // Basta con que una interfaz esté denegada
+        assertEquals(WhitelistRuleEngine.Decision.DENY, engine.evaluate(5, 1, null, composite, 2));
+        // La subclase también cuenta, y solo se leen las primeras classCount posiciones
+        assertEquals(WhitelistRuleEngine.Decision.NO_MATCH,
+                engine.evaluate(5, 1, null, new int[] {MASS_STORAGE << 8 | 0x05}, 1));
+        assertEquals(WhitelistRuleEngine.Decision.ALLOW, engine.evaluate(5, 1, null, composite, 1));
+    }
+
+    @Test
+    public void emptyEngineMatchesNothing() {
+        assertTrue(WhitelistRuleEngine.EMPTY.isEmpty());
+        assertEquals(WhitelistRuleEngine.Decision.NO_MATCH,
+                WhitelistRuleEngine.EMPTY.evaluate(1921, 1, "X", NO_CLASSES, 0));
+    }
+}
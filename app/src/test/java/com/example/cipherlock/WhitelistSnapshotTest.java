@@ -0,0 +1,124 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * WhitelistSnapshot en texto plano: ida y vuelta, vigencia, colisiones de huella e IDs largos
+ */
+public class WhitelistSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File newSnapshotFile() {
+        return new File(folder.getRoot(), "whitelist.snapshot");
+    }
+
+    @Test
+    public void roundTripFindsEveryDevice() throws Exception {
+        List<WhitelistedDevice> devices = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            devices.add(new WhitelistedDevice(i + ":" + (i * 7) + ":SN" + i, "Dispositivo " + i, i));
+        }
+        devices.add(new WhitelistedDevice("4660:1:", "Sin serie", 0));
+
+        File file = newSnapshotFile();
+        assertTrue(WhitelistSnapshot.write(file, devices, 3, 1024));
+
+        WhitelistSnapshot snapshot = WhitelistSnapshot.open(file);
+        assertNotNull(snapshot);
+        assertEquals(devices.size(), snapshot.size());
+        for (WhitelistedDevice device : devices) {
+            assertTrue(snapshot.contains(device.getId()));
+        }
+        assertTrue(snapshot.contains(DeviceFingerprint.of(4660, 1, null), 4660, 1, null));
+        assertTrue(snapshot.contains(DeviceFingerprint.of(5, 35, "SN5"), 5, 35, "SN5"));
+        assertFalse(snapshot.contains("5:35:SN6"));
+        assertFalse(snapshot.contains(DeviceFingerprint.of(5, 35, "SN6"), 5, 35, "SN6"));
+    }
+
+    @Test
+    public void isCurrentDetectsStaleSnapshot() throws Exception {
+        File file = newSnapshotFile();
+        assertTrue(WhitelistSnapshot.write(file,
+                Arrays.asList(new WhitelistedDevice("1:2:A", "Uno", 1)), 4, 512));
+
+        WhitelistSnapshot snapshot = WhitelistSnapshot.open(file);
+        assertTrue(snapshot.isCurrent(4, 512));
+        // El log creció desde la instantánea, o se compactó
+        assertFalse(snapshot.isCurrent(4, 600));
+        assertFalse(snapshot.isCurrent(5, 512));
+    }
+
+    @Test
+    public void equalFingerprintsAreConfirmedById() throws Exception {
+        // Registros escritos a mano con la misma huella, como haría una colisión real
+        long hash = 42;
+        String[] ids = {"1:2:A", "1:2:B", "1:2:C", "1:2:D", "1:2:E"};
+        File file = newSnapshotFile();
+        ByteBuffer buffer = ByteBuffer.allocate(32 + (ids.length + 2) * WhitelistSnapshot.RECORD_SIZE);
+        buffer.putInt(0x434C5753).putShort((short) 1).putShort((short) 0)
+                .putInt(ids.length + 2).putInt(0).putLong(1).putLong(1);
+        putRecord(buffer, 1, "9:9:antes");
+        for (String id : ids) {
+            putRecord(buffer, hash, id);
+        }
+        putRecord(buffer, 100, "9:9:despues");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(buffer.array());
+        }
+
+        WhitelistSnapshot snapshot = WhitelistSnapshot.open(file);
+        assertNotNull(snapshot);
+        // El primero y el último del grupo obligan a recorrer los dos lados de la búsqueda
+        for (String id : ids) {
+            assertTrue(id, snapshot.contains(hash, 1, 2, id.substring(4)));
+        }
+        assertFalse(snapshot.contains(hash, 1, 2, "Z"));
+        assertFalse(snapshot.contains(hash, 9, 9, "antes"));
+        assertFalse(snapshot.contains(7, 1, 2, "A"));
+    }
+
+    @Test
+    public void tooLongIdFallsBackToLog() throws Exception {
+        File file = newSnapshotFile();
+        assertTrue(WhitelistSnapshot.write(file,
+                Arrays.asList(new WhitelistedDevice("1:2:A", "Uno", 1)), 1, 64));
+        assertTrue(file.exists());
+
+        StringBuilder serial = new StringBuilder();
+        for (int i = 0; i < WhitelistSnapshot.MAX_ID_BYTES; i++) {
+            serial.append('x');
+        }
+        List<WhitelistedDevice> devices = Arrays.asList(
+                new WhitelistedDevice("1:2:A", "Uno", 1),
+                new WhitelistedDevice("1:2:" + serial, "Largo", 2));
+
+        // La instantánea anterior ya no refleja la lista: se borra y se consulta el log
+        assertFalse(WhitelistSnapshot.write(file, devices, 2, 128));
+        assertFalse(file.exists());
+        assertNull(WhitelistSnapshot.open(file));
+    }
+
+    private static void putRecord(ByteBuffer buffer, long hash, String id) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int position = buffer.position();
+        buffer.putLong(hash).putShort((short) idBytes.length).put(idBytes);
+        buffer.position(position + WhitelistSnapshot.RECORD_SIZE);
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Escrituras concurrentes sobre WhitelistStore: ninguna alta ni baja se pierde
+ */
+public class WhitelistStoreTest {
+    private static final int WRITERS = 8;
+    private static final int DEVICES_PER_WRITER = 500;
+    private static final int READERS = 4;
+
+    @Test
+    public void concurrentWritersDoNotLoseUpdates() throws Exception {
+        final WhitelistStore store = new WhitelistStore(new ArrayList<WhitelistedDevice>());
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger successfulWrites = new AtomicInteger();
+        final AtomicBoolean writersDone = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            writers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < DEVICES_PER_WRITER; i++) {
+                        if (store.add(device(writer, i))) {
+                            successfulWrites.incrementAndGet();
+                        }
+                        // Cada escritor elimina sus dispositivos impares
+                        if (i % 2 == 1 && store.remove(id(writer, i))) {
+                            successfulWrites.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        // Los lectores comprueban que cada instantánea es coherente mientras se escribe
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            readers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    long lastVersion = -1;
+                    while (!writersDone.get()) {
+                        WhitelistStore.Snapshot snapshot = store.snapshot();
+                        assertTrue("La versión nunca retrocede", snapshot.getVersion() >= lastVersion);
+                        lastVersion = snapshot.getVersion();
+                        for (WhitelistedDevice device : snapshot.getDevices()) {
+                            assertTrue(snapshot.getBloomFilter().mightContain(device.getFingerprint()));
+                        }
+                        store.contains(id(0, 0));
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        for (Thread thread : writers) {
+            thread.start();
+        }
+        for (Thread thread : readers) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        writersDone.set(true);
+        for (Thread thread : readers) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        WhitelistStore.Snapshot result = store.snapshot();
+        assertEquals(WRITERS * DEVICES_PER_WRITER / 2, result.size());
+        assertEquals(successfulWrites.get(), result.getVersion());
+        for (int w = 0; w < WRITERS; w++) {
+            for (int i = 0; i < DEVICES_PER_WRITER; i++) {
+                assertEquals(id(w, i), i % 2 == 0, store.contains(id(w, i)));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentAddsOfSameDeviceSucceedOnce() throws Exception {
+        final WhitelistStore store = new WhitelistStore(new ArrayList<WhitelistedDevice>());
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger added = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < WRITERS; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < DEVICES_PER_WRITER; i++) {
+                    if (store.add(device(0, i))) {
+                        added.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(DEVICES_PER_WRITER, added.get());
+        assertEquals(DEVICES_PER_WRITER, store.snapshot().size());
+        assertEquals(DEVICES_PER_WRITER, store.getVersion());
+    }
+
+    @Test
+    public void snapshotIsNotAffectedByLaterWrites() {
+        List<WhitelistedDevice> initial = new ArrayList<>();
+        initial.add(device(0, 0));
+        WhitelistStore store = new WhitelistStore(initial);
+
+        WhitelistStore.Snapshot before = store.snapshot();
+        assertTrue(store.add(device(0, 1)));
+        assertTrue(store.remove(id(0, 0)));
+
+        assertEquals(1, before.size());
+        assertEquals(id(0, 0), before.getDevices().get(0).getId());
+        assertNull(store.snapshot().get(id(0, 0)));
+        assertFalse(store.contains(id(0, 0)));
+        assertTrue(store.contains(DeviceFingerprint.of(0x1234, 1, "SN1"), 0x1234, 1, "SN1"));
+        assertEquals(2, store.getVersion());
+    }
+
+    @Test
+    public void removeAllPublishesOnce() {
+        List<WhitelistedDevice> initial = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            initial.add(device(0, i));
+        }
+        WhitelistStore store = new WhitelistStore(initial);
+
+        List<String> removed = store.removeAll(Arrays.asList(id(0, 2), id(0, 5), id(9, 9)));
+        assertEquals(Arrays.asList(id(0, 2), id(0, 5)), removed);
+        assertEquals(1, store.getVersion());
+        assertEquals(8, store.snapshot().size());
+        assertFalse(store.contains(id(0, 2)));
+        assertTrue(store.contains(id(0, 3)));
+
+        // Nada que eliminar: no se publica otra versión
+        assertTrue(store.removeAll(Arrays.asList(id(0, 2))).isEmpty());
+        assertEquals(1, store.getVersion());
+    }
+
+    @Test
+    public void indexesStayConsistentAcrossAddsAndRemoves() {
+        WhitelistStore store = new WhitelistStore(new ArrayList<WhitelistedDevice>());
+        // Más altas que la capacidad inicial del filtro, para que se rehaga al llenarse
+        for (int i = 0; i < 300; i++) {
+            assertTrue(store.add(device(1, i)));
+            if (i % 3 == 0) {
+                assertTrue(store.remove(id(1, i / 2)));
+            }
+        }
+        WhitelistStore.Snapshot before = store.snapshot();
+        store.removeAll(Arrays.asList(id(1, 299), id(1, 298)));
+
+        for (int i = 0; i < 300; i++) {
+            long fingerprint = DeviceFingerprint.of(0x1235, i, "SN" + i);
+            boolean expected = store.snapshot().get(id(1, i)) != null;
+            assertEquals(expected, store.contains(id(1, i)));
+            assertEquals(expected, store.contains(fingerprint, 0x1235, i, "SN" + i));
+            // La instantánea anterior conserva sus propios índices
+            assertEquals(before.get(id(1, i)) != null,
+                    before.findFingerprint(fingerprint, 0x1235, i, "SN" + i) != null);
+        }
+        assertTrue(before.findFingerprint(DeviceFingerprint.of(0x1235, 299, "SN299"), 0x1235, 299, "SN299") != null);
+        assertFalse(store.contains(id(1, 299)));
+    }
+
+    private static String id(int writer, int index) {
+        return DeviceFingerprint.toDeviceId(0x1234 + writer, index, "SN" + index);
+    }
+
+    private static WhitelistedDevice device(int writer, int index) {
+        return new WhitelistedDevice(id(writer, index), "Dispositivo " + writer + "-" + index, index);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Importación y exportación de WhitelistTransfer en CSV y JSON lines
+ */
+public class WhitelistTransferTest {
+    private static final long IMPORT_TIME = 1700000000000L;
+
+    @Test
+    public void csvRoundTripKeepsQuotedFields() throws Exception {
+        roundTrip(WhitelistTransfer.Format.CSV);
+    }
+
+    @Test
+    public void jsonLinesRoundTrip() throws Exception {
+        roundTrip(WhitelistTransfer.Format.JSON_LINES);
+    }
+
+    @Test
+    public void csvWithoutHeaderAndReorderedHeader() throws Exception {
+        List<WhitelistedDevice> plain = new ArrayList<>();
+        read("1:2:A,Teclado,5\r\n3:4:,Ratón,\n", WhitelistTransfer.Format.CSV, plain);
+        assertEquals(2, plain.size());
+        assertEquals("Teclado", plain.get(0).getName());
+        assertEquals(5, plain.get(0).getAddedTimestamp());
+        assertEquals(IMPORT_TIME, plain.get(1).getAddedTimestamp());
+
+        List<WhitelistedDevice> reordered = new ArrayList<>();
+        read("name,addedTimestamp,id\nLlave,9,10:20:S\n", WhitelistTransfer.Format.CSV, reordered);
+        assertEquals(1, reordered.size());
+        assertEquals("10:20:S", reordered.get(0).getId());
+        assertEquals("Llave", reordered.get(0).getName());
+        assertEquals(9, reordered.get(0).getAddedTimestamp());
+    }
+
+    @Test
+    public void rejectsInvalidRecordsAndDuplicates() throws Exception {
+        String csv = "id,name,addedTimestamp\n"
+                + "1:2:A,Uno,1\n"
+                + "1:2:A,Repetido,2\n"
+                + "sin-formato,Malo,3\n"
+                + "70000:1:B,Vendor fuera de rango,4\n"
+                + "1:2:B,Fecha mala,ayer\n"
+                + "1:2:C,Dos,-1\n";
+        List<WhitelistedDevice> devices = new ArrayList<>();
+        WhitelistTransfer.Result result = read(csv, WhitelistTransfer.Format.CSV, devices);
+
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getDuplicates());
+        assertEquals(4, result.getInvalid());
+        assertNotNull(result.getFirstError());
+        assertEquals("1:2:A", devices.get(0).getId());
+
+        List<WhitelistedDevice> fromJson = new ArrayList<>();
+        WhitelistTransfer.Result jsonResult = read("{\"id\":\"1:2:A\"}\n{roto\n\n{\"name\":\"sin id\"}\n",
+                WhitelistTransfer.Format.JSON_LINES, fromJson);
+        assertEquals(1, jsonResult.getImported());
+        assertEquals(2, jsonResult.getInvalid());
+    }
+
+    @Test
+    public void jsonLinesRejectsTrailingContent() throws Exception {
+        List<WhitelistedDevice> devices = new ArrayList<>();
+        WhitelistTransfer.Result result = read("{\"id\":\"1:2:A\"}  \n"
+                        + "{\"id\":\"1:2:B\"} {\"id\":\"1:2:C\"}\n"
+                        + "{\"id\":\"1:2:D\"}basura\n",
+                WhitelistTransfer.Format.JSON_LINES, devices);
+
+        assertEquals(1, result.getImported());
+        assertEquals(2, result.getInvalid());
+        assertEquals("1:2:A", devices.get(0).getId());
+    }
+
+    @Test
+    public void validateLimits() {
+        assertNull(WhitelistTransfer.validate("65535:0:serie", "Nombre", 0));
+        assertNotNull(WhitelistTransfer.validate("", "Nombre", 0));
+        assertNotNull(WhitelistTransfer.validate("1:2", "Nombre", 0));
+        assertNotNull(WhitelistTransfer.validate("1:2:" + repeat('x', WhitelistSnapshot.MAX_ID_BYTES), null, 0));
+        assertNotNull(WhitelistTransfer.validate("1:2:a\tb", null, 0));
+        assertNotNull(WhitelistTransfer.validate("1:2:a", repeat('n', WhitelistTransfer.MAX_NAME_LENGTH + 1), 0));
+    }
+
+    private static void roundTrip(WhitelistTransfer.Format format) throws IOException {
+        List<WhitelistedDevice> devices = new ArrayList<>();
+        devices.add(new WhitelistedDevice("1234:5678:ABC", "Kingston DataTraveler", 1700000000000L));
+        devices.add(new WhitelistedDevice("1:2:", "Hub, \"USB\" 3.0", 1L));
+        devices.add(new WhitelistedDevice("4660:1:serie ñ", "Teclado\nsegunda línea", 42L));
+
+        StringWriter writer = new StringWriter();
+        assertEquals(devices.size(), WhitelistTransfer.write(writer, format, devices));
+
+        List<WhitelistedDevice> parsed = new ArrayList<>();
+        WhitelistTransfer.Result result = read(writer.toString(), format, parsed);
+
+        assertEquals(0, result.getInvalid());
+        assertEquals(devices.size(), parsed.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            assertEquals(devices.get(i).getId(), parsed.get(i).getId());
+            assertEquals(devices.get(i).getName(), parsed.get(i).getName());
+            assertEquals(devices.get(i).getAddedTimestamp(), parsed.get(i).getAddedTimestamp());
+        }
+    }
+
+    private static WhitelistTransfer.Result read(String text, WhitelistTransfer.Format format,
+                                                 final List<WhitelistedDevice> sink) throws IOException {
+        return WhitelistTransfer.read(new StringReader(text), format, new HashSet<String>(), IMPORT_TIME,
+                new WhitelistCodec.DeviceSink() {
+                    @Override
+                    public void accept(WhitelistedDevice device) {
+                        sink.add(device);
+                    }
+                });
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.cipherlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * WhitelistUsage: conexiones acumuladas en memoria, volcadas en lote y expulsión por uso
+ */
+public class WhitelistUsageTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void hitsAreCoalescedUntilDrained() {
+        WhitelistUsage usage = new WhitelistUsage();
+        for (int i = 1; i <= 100; i++) {
+            usage.record("1:2:A", i);
+        }
+        usage.record("3:4:B", 50);
+
+        List<WhitelistUsage.Entry> dirty = usage.drainDirty();
+        assertEquals(2, dirty.size());
+        assertEquals("1:2:A", dirty.get(0).getDeviceId());
+        assertEquals(100, dirty.get(0).getHitCount());
+        assertEquals(100, dirty.get(0).getLastSeenTimestamp());
+        assertFalse(usage.hasDirty());
+        assertTrue(usage.drainDirty().isEmpty());
+
+        // Lo leído del disco después se suma a lo anotado en memoria
+        usage.load(new WhitelistUsage.Entry("3:4:B", 20, 7));
+        assertEquals(8, usage.get("3:4:B").getHitCount());
+        assertEquals(50, usage.get("3:4:B").getLastSeenTimestamp());
+    }
+
+    @Test
+    public void evictsStaleThenLeastRecentlyUsed() {
+        long now = 1000 * DAY;
+        WhitelistedDevice stale = new WhitelistedDevice("1:1:A", "Antiguo", now - 900 * DAY);
+        WhitelistedDevice old = new WhitelistedDevice("2:2:B", "Poco usado", now - 300 * DAY);
+        WhitelistedDevice recent = new WhitelistedDevice("3:3:C", "Habitual", now - 300 * DAY);
+        WhitelistedDevice added = new WhitelistedDevice("4:4:D", "Nuevo", now - DAY);
+        List<WhitelistedDevice> devices = Arrays.asList(stale, old, recent, added);
+
+        WhitelistUsage usage = new WhitelistUsage();
+        usage.record("3:3:C", now - 2 * DAY);
+        usage.record("2:2:B", now - 200 * DAY);
+
+        List<String> evicted = usage.selectEvictions(devices, 2, 365 * DAY, now, 0);
+        assertEquals(Arrays.asList("1:1:A", "2:2:B"), evicted);
+
+        // Sin límites no se expulsa nada
+        assertTrue(usage.selectEvictions(devices, 0, 0, now, 0).isEmpty());
+        // Los dispositivos sin uso anotado cuentan como usados al empezar el registro
+        assertTrue(usage.selectEvictions(devices, 0, 365 * DAY, now, now - 10 * DAY).isEmpty());
+    }
+
+    @Test
+    public void usageSurvivesReopenCompactionAndRemoval() throws Exception {
+        File file = new File(folder.getRoot(), "whitelist.log");
+        WhitelistLog log = new WhitelistLog(file);
+        log.open();
+        log.appendAdd(new WhitelistedDevice("1:2:A", "Memoria", 10));
+        log.appendAdd(new WhitelistedDevice("3:4:B", "Teclado", 20));
+
+        WhitelistUsage usage = new WhitelistUsage();
+        usage.record("1:2:A", 100);
+        usage.record("1:2:A", 200);
+        usage.record("3:4:B", 150);
+        long before = file.length();
+        log.appendUsage(usage.drainDirty());
+        usage.record("1:2:A", 300);
+        log.appendUsage(usage.drainDirty());
+        assertTrue(file.length() > before);
+        log.appendRemove("3:4:B");
+        log.close();
+
+        WhitelistUsage reloaded = new WhitelistUsage();
+        WhitelistLog reopened = new WhitelistLog(file);
+        assertEquals(1, reopened.open(reloaded).size());
+        assertEquals(3, reloaded.get("1:2:A").getHitCount());
+        assertEquals(300, reloaded.get("1:2:A").getLastSeenTimestamp());
+        assertNull(reloaded.get("3:4:B"));
+
+        // Una reescritura conserva el uso, también al migrar al formato cifrado
+        reopened.rewrite(Collections.singletonList(new WhitelistedDevice("1:2:A", "Memoria", 10)), reloaded);
+        reopened.close();
+        RecordCipher cipher = new RecordCipher(RecordCipher.generateKey(), RecordCipher.generateKey());
+        WhitelistLog sealed = new WhitelistLog(file, cipher);
+        sealed.open();
+        sealed.close();
+        WhitelistUsage migrated = new WhitelistUsage();
+        WhitelistLog sealedAgain = new WhitelistLog(file, cipher);
+        sealedAgain.open(migrated);
+        sealedAgain.close();
+        assertEquals(3, migrated.get("1:2:A").getHitCount());
+    }
+}
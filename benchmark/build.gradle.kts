@@ -0,0 +1,52 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+// Las clases de la app que no dependen de Android se compilan aquí tal cual,
+// para medir la ruta de autorización en una JVM normal
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(
+                "com/example/cipherlock/DeviceFingerprint.java",
+                "com/example/cipherlock/LongHashMap.java",
+                "com/example/cipherlock/PasswordHasher.java",
+                "com/example/cipherlock/RecordCipher.java",
+                "com/example/cipherlock/WhitelistBloomFilter.java",
+                "com/example/cipherlock/WhitelistCodec.java",
+                "com/example/cipherlock/WhitelistLog.java",
+                "com/example/cipherlock/WhitelistRule.java",
+                "com/example/cipherlock/WhitelistRuleEngine.java",
+                "com/example/cipherlock/WhitelistSnapshot.java",
+                "com/example/cipherlock/WhitelistStore.java",
+                "com/example/cipherlock/WhitelistTransfer.java",
+                "com/example/cipherlock/WhitelistUsage.java",
+                "com/example/cipherlock/WhitelistedDevice.java"
+            )
+        }
+    }
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    implementation("com.google.code.gson:gson:2.10.1")
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    // Asignaciones por operación junto al tiempo
+    profilers.add("gc")
+}
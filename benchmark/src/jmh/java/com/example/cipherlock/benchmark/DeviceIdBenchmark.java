@@ -0,0 +1,43 @@
+package com.example.cipherlock.benchmark;
+
+import com.example.cipherlock.DeviceFingerprint;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Identificación del dispositivo conectado: ID de texto original frente a huella de 64 bits
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DeviceIdBenchmark {
+    private UsbDeviceStandIn[] devices;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        devices = Fixtures.queries(1_000);
+    }
+
+    private UsbDeviceStandIn nextDevice() {
+        next = (next + 1) & (devices.length - 1);
+        return devices[next];
+    }
+
+    @Benchmark
+    public String legacyStringId() {
+        return LegacyWhitelist.generateDeviceId(nextDevice());
+    }
+
+    @Benchmark
+    public long fingerprintFromFields() {
+        UsbDeviceStandIn device = nextDevice();
+        return DeviceFingerprint.of(device.getVendorId(), device.getProductId(), device.getSerialNumber());
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.cipherlock.benchmark;
+
+import com.example.cipherlock.WhitelistedDevice;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Datos de prueba comunes: listas blancas sintéticas y directorios temporales
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static UsbDeviceStandIn device(int index) {
+        return new UsbDeviceStandIn(1000 + index % 500, 2000 + index, "SN" + index);
+    }
+
+    static List<WhitelistedDevice> whitelist(int size) {
+        List<WhitelistedDevice> devices = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            devices.add(new WhitelistedDevice(LegacyWhitelist.generateDeviceId(device(i)),
+                    "Dispositivo de prueba " + i, 1700000000000L + i));
+        }
+        return devices;
+    }
+
+    /**
+     * Lista de aprovisionamiento con IDs USB válidos (vendorId y productId de 16 bits)
+     */
+    static List<WhitelistedDevice> provisioningList(int size) {
+        List<WhitelistedDevice> devices = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String id = (1000 + i % 500) + ":" + (i / 500) + ":SN" + i;
+            devices.add(new WhitelistedDevice(id, "Periférico aprobado " + i, 1700000000000L + i));
+        }
+        return devices;
+    }
+
+    /**
+     * Mitad de consultas a dispositivos de la lista y mitad a desconocidos
+     */
+    static UsbDeviceStandIn[] queries(int size) {
+        UsbDeviceStandIn[] queries = new UsbDeviceStandIn[64];
+        for (int i = 0; i < queries.length; i++) {
+            int index = (i % 2 == 0) ? (int) ((long) i * 7919 % size) : size + i;
+            queries[i] = device(index);
+        }
+        return queries;
+    }
+
+    static File tempDirectory() throws IOException {
+        return Files.createTempDirectory("cipherlock-bench").toFile();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.cipherlock.benchmark;
+
+import com.example.cipherlock.WhitelistedDevice;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reproduce la lógica original de USBReceiver (JSON en preferencias, Gson nuevo en cada
+ * llamada y búsqueda lineal) como línea base de comparación.
+ */
+final class LegacyWhitelist {
+    static final String WHITELIST_KEY = "whitelist_devices";
+
+    private LegacyWhitelist() {
+    }
+
+    static String generateDeviceId(UsbDeviceStandIn device) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(device.getVendorId())
+                .append(":")
+                .append(device.getProductId())
+                .append(":");
+
+        String serialNumber = device.getSerialNumber();
+        if (serialNumber != null) {
+            builder.append(serialNumber);
+        }
+
+        return builder.toString();
+    }
+
+    static boolean isDeviceWhitelisted(PreferencesStandIn settings, String deviceId) {
+        for (WhitelistedDevice device : getWhitelistedDevices(settings)) {
+            if (device.getId().equals(deviceId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static List<WhitelistedDevice> getWhitelistedDevices(PreferencesStandIn settings) {
+        String jsonWhitelist = settings.getString(WHITELIST_KEY, "");
+        if (jsonWhitelist.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Gson gson = new Gson();
+        Type type = new TypeToken<List<WhitelistedDevice>>(){}.getType();
+        return gson.fromJson(jsonWhitelist, type);
+    }
+
+    static void addDeviceToWhitelist(PreferencesStandIn settings, String deviceId, String deviceName)
+            throws IOException {
+        List<WhitelistedDevice> devices = getWhitelistedDevices(settings);
+        for (WhitelistedDevice device : devices) {
+            if (device.getId().equals(deviceId)) {
+                return;
+            }
+        }
+        devices.add(new WhitelistedDevice(deviceId, deviceName, System.currentTimeMillis()));
+        saveWhitelistedDevices(settings, devices);
+    }
+
+    static void removeDeviceFromWhitelist(PreferencesStandIn settings, String deviceId) throws IOException {
+        List<WhitelistedDevice> updated = new ArrayList<>();
+        for (WhitelistedDevice device : getWhitelistedDevices(settings)) {
+            if (!device.getId().equals(deviceId)) {
+                updated.add(device);
+            }
+        }
+        saveWhitelistedDevices(settings, updated);
+    }
+
+    static void saveWhitelistedDevices(PreferencesStandIn settings, List<WhitelistedDevice> devices)
+            throws IOException {
+        settings.putStringAndApply(WHITELIST_KEY, new Gson().toJson(devices));
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.cipherlock.benchmark;
+
+import com.example.cipherlock.PasswordHasher;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Latencia de desbloqueo (PasswordHasher.verify) según el número de iteraciones de PBKDF2.
+ * El fallo cuesta lo mismo que el acierto: no se puede distinguir por tiempo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PasswordKdfBenchmark {
+    @Param({"10000", "100000", "310000"})
+    public int iterations;
+
+    private String stored;
+
+    @Setup
+    public void setUp() {
+        stored = PasswordHasher.hash("contraseña-de-prueba", iterations);
+    }
+
+    @Benchmark
+    public boolean verifyCorrect() {
+        return PasswordHasher.verify("contraseña-de-prueba", stored);
+    }
+
+    @Benchmark
+    public boolean verifyWrong() {
+        return PasswordHasher.verify("contraseña-de-pruebA", stored);
+    }
+}
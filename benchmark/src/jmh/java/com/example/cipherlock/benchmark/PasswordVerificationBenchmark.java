@@ -0,0 +1,59 @@
+package com.example.cipherlock.benchmark;
+
+import com.example.cipherlock.PasswordHasher;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Comparación de la contraseña: String.equals (antes) frente a la comparación en tiempo
+ * constante de PasswordHasher. El coste de PBKDF2 se mide en PasswordKdfBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PasswordVerificationBenchmark {
+    @Param({"8", "32"})
+    public int passwordLength;
+
+    private String savedPassword;
+    private String correctAttempt;
+    private String wrongAttempt;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < passwordLength; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        savedPassword = builder.toString();
+        correctAttempt = new String(savedPassword.toCharArray());
+        wrongAttempt = savedPassword.substring(0, passwordLength - 1) + "#";
+    }
+
+    @Benchmark
+    public boolean plainEqualsCorrect() {
+        return correctAttempt.equals(savedPassword);
+    }
+
+    @Benchmark
+    public boolean plainEqualsWrong() {
+        return wrongAttempt.equals(savedPassword);
+    }
+
+    @Benchmark
+    public boolean constantTimeCorrect() {
+        return PasswordHasher.verify(correctAttempt, savedPassword);
+    }
+
+    @Benchmark
+    public boolean constantTimeWrong() {
+        return PasswordHasher.verify(wrongAttempt, savedPassword);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.cipherlock.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sustituto de SharedPreferences: como la implementación de Android, cada apply()
+ * reescribe el fichero completo con todas las claves y lo sincroniza en disco.
+ */
+final class PreferencesStandIn {
+    private final Map<String, String> values = new HashMap<>();
+    private final File file;
+
+    PreferencesStandIn(File file) {
+        this.file = file;
+    }
+
+    String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    void putStringAndApply(String key, String value) throws IOException {
+        values.put(key, value);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write("<map>\n");
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                writer.write("<string name=\"" + entry.getKey() + "\">" + entry.getValue() + "</string>\n");
+            }
+            writer.write("</map>\n");
+            writer.flush();
+            out.getFD().sync();
+        }
+    }
+}
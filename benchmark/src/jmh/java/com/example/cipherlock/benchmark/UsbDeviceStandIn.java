@@ -0,0 +1,28 @@
+package com.example.cipherlock.benchmark;
+
+/**
+ * Sustituto de android.hardware.usb.UsbDevice con los campos que usa la ruta de autorización
+ */
+final class UsbDeviceStandIn {
+    private final int vendorId;
+    private final int productId;
+    private final String serialNumber;
+
+    UsbDeviceStandIn(int vendorId, int productId, String serialNumber) {
+        this.vendorId = vendorId;
+        this.productId = productId;
+        this.serialNumber = serialNumber;
+    }
+
+    int getVendorId() {
+        return vendorId;
+    }
+
+    int getProductId() {
+        return productId;
+    }
+
+    String getSerialNumber() {
+        return serialNumber;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.cipherlock.benchmark;
+
+import com.example.cipherlock.WhitelistCodec;
+import com.example.cipherlock.WhitelistedDevice;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * (De)serialización de la lista blanca completa: WhitelistCodec frente a Gson reflexivo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WhitelistCodecJmhBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private List<WhitelistedDevice> devices;
+    private String json;
+    private Type type;
+
+    @Setup
+    public void setUp() throws Exception {
+        devices = Fixtures.whitelist(size);
+        StringWriter writer = new StringWriter();
+        WhitelistCodec.write(writer, devices);
+        json = writer.toString();
+        type = new TypeToken<List<WhitelistedDevice>>(){}.getType();
+    }
+
+    @Benchmark
+    public List<WhitelistedDevice> codecRead() throws Exception {
+        return WhitelistCodec.read(new StringReader(json));
+    }
+
+    @Benchmark
+    public List<WhitelistedDevice> gsonRead() {
+        return new Gson().fromJson(json, type);
+    }
+
+    @Benchmark
+    public StringWriter codecWrite() throws Exception {
+        StringWriter writer = new StringWriter(json.length());
+        WhitelistCodec.write(writer, devices);
+        return writer;
+    }
+
+    @Benchmark
+    public String gsonWrite() {
+        return new Gson().toJson(devices);
+    }
+}
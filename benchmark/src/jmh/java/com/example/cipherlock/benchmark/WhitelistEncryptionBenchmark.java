@@ -0,0 +1,102 @@
+package com.example.cipherlock.benchmark;
+
+import com.example.cipherlock.DeviceFingerprint;
+import com.example.cipherlock.RecordCipher;
+import com.example.cipherlock.WhitelistLog;
+import com.example.cipherlock.WhitelistSnapshot;
+import com.example.cipherlock.WhitelistedDevice;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Coste del cifrado en disco: consulta en la instantánea (huella + ID en claro frente a
+ * índice con clave) y actualización del log (registro en claro frente a registro sellado)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class WhitelistEncryptionBenchmark {
+    @Param({"10", "100000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean encrypted;
+
+    private File directory;
+    private RecordCipher cipher;
+    private WhitelistSnapshot snapshot;
+    private WhitelistLog log;
+    private WhitelistedDevice extraDevice;
+    private byte[] record;
+    private byte[] aad;
+
+    private UsbDeviceStandIn[] queries;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Fixtures.tempDirectory();
+        List<WhitelistedDevice> devices = Fixtures.whitelist(size);
+        cipher = encrypted ? new RecordCipher(RecordCipher.generateKey(), RecordCipher.generateKey()) : null;
+
+        File snapshotFile = new File(directory, "whitelist.snapshot");
+        WhitelistSnapshot.write(snapshotFile, devices, 0, 0, cipher);
+        snapshot = WhitelistSnapshot.open(snapshotFile, cipher);
+
+        log = new WhitelistLog(new File(directory, "whitelist.log"), cipher);
+        log.rewrite(devices);
+        log.open();
+
+        extraDevice = new WhitelistedDevice(LegacyWhitelist.generateDeviceId(Fixtures.device(size + 1)),
+                "Dispositivo nuevo", System.currentTimeMillis());
+        record = new byte[10 + extraDevice.getId().length() + extraDevice.getName().length()];
+        aad = new byte[] {1};
+        queries = Fixtures.queries(size);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        log.close();
+        Fixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public boolean snapshotLookup() {
+        next = (next + 1) & (queries.length - 1);
+        UsbDeviceStandIn device = queries[next];
+        long fingerprint = DeviceFingerprint.of(device.getVendorId(), device.getProductId(), device.getSerialNumber());
+        return snapshot.contains(fingerprint, device.getVendorId(), device.getProductId(), device.getSerialNumber());
+    }
+
+    /**
+     * Alta y baja anexadas al log, con fsync: lo que cuesta de verdad un cambio
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void logUpdate() throws Exception {
+        log.appendAdd(extraDevice);
+        log.appendRemove(extraDevice.getId());
+    }
+
+    /**
+     * Solo el sellado de un registro, sin E/S: el sobrecoste del cifrado en cada cambio
+     */
+    @Benchmark
+    public byte[] sealRecord() throws Exception {
+        return encrypted ? cipher.seal(record, aad) : record;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.cipherlock.benchmark;
+
+import com.example.cipherlock.DeviceFingerprint;
+import com.example.cipherlock.LongHashMap;
+import com.example.cipherlock.WhitelistBloomFilter;
+import com.example.cipherlock.WhitelistSnapshot;
+import com.example.cipherlock.WhitelistedDevice;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Decisión "¿está en la lista blanca?" con cada una de las estructuras disponibles.
+ * La mitad de las consultas son dispositivos de la lista y la otra mitad desconocidos.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WhitelistLookupBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private PreferencesStandIn settings;
+    private Map<String, WhitelistedDevice> devicesById;
+    private LongHashMap<WhitelistedDevice> devicesByFingerprint;
+    private WhitelistBloomFilter bloomFilter;
+    private WhitelistSnapshot snapshot;
+    private File directory;
+
+    private UsbDeviceStandIn[] queries;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Fixtures.tempDirectory();
+        List<WhitelistedDevice> devices = Fixtures.whitelist(size);
+
+        settings = new PreferencesStandIn(new File(directory, "prefs.xml"));
+        LegacyWhitelist.saveWhitelistedDevices(settings, devices);
+
+        devicesById = new HashMap<>();
+        devicesByFingerprint = new LongHashMap<>(size);
+        bloomFilter = new WhitelistBloomFilter(size * 2);
+        for (WhitelistedDevice device : devices) {
+            devicesById.put(device.getId(), device);
+            devicesByFingerprint.put(device.getFingerprint(), device);
+            bloomFilter.add(device.getFingerprint());
+        }
+
+        File snapshotFile = new File(directory, "whitelist.snapshot");
+        WhitelistSnapshot.write(snapshotFile, devices, 0, 0);
+        snapshot = WhitelistSnapshot.open(snapshotFile);
+
+        queries = Fixtures.queries(size);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Fixtures.deleteRecursively(directory);
+    }
+
+    private UsbDeviceStandIn nextQuery() {
+        next = (next + 1) & (queries.length - 1);
+        return queries[next];
+    }
+
+    /**
+     * Comportamiento original: leer JSON, deserializar con Gson y recorrer la lista
+     */
+    @Benchmark
+    public boolean legacyParseAndScan() {
+        return LegacyWhitelist.isDeviceWhitelisted(settings, LegacyWhitelist.generateDeviceId(nextQuery()));
+    }
+
+    @Benchmark
+    public boolean stringKeyedCache() {
+        return devicesById.containsKey(LegacyWhitelist.generateDeviceId(nextQuery()));
+    }
+
+    @Benchmark
+    public boolean fingerprintIndex() {
+        UsbDeviceStandIn device = nextQuery();
+        long fingerprint = DeviceFingerprint.of(device.getVendorId(), device.getProductId(), device.getSerialNumber());
+        if (!bloomFilter.mightContain(fingerprint)) {
+            return false;
+        }
+        WhitelistedDevice entry = devicesByFingerprint.get(fingerprint);
+        return entry != null && DeviceFingerprint.matches(entry.getId(),
+                device.getVendorId(), device.getProductId(), device.getSerialNumber());
+    }
+
+    @Benchmark
+    public boolean mappedSnapshot() {
+        UsbDeviceStandIn device = nextQuery();
+        long fingerprint = DeviceFingerprint.of(device.getVendorId(), device.getProductId(), device.getSerialNumber());
+        return snapshot.contains(fingerprint, device.getVendorId(), device.getProductId(), device.getSerialNumber());
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.cipherlock.benchmark;
+
+import com.example.cipherlock.WhitelistLog;
+import com.example.cipherlock.WhitelistedDevice;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Coste de un alta seguida de una baja: reescritura completa del JSON en preferencias
+ * frente a dos registros anexados al log binario
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class WhitelistPersistenceBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private File directory;
+    private PreferencesStandIn settings;
+    private WhitelistLog log;
+    private WhitelistedDevice extraDevice;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Fixtures.tempDirectory();
+        List<WhitelistedDevice> devices = Fixtures.whitelist(size);
+
+        settings = new PreferencesStandIn(new File(directory, "prefs.xml"));
+        LegacyWhitelist.saveWhitelistedDevices(settings, devices);
+
+        log = new WhitelistLog(new File(directory, "whitelist.log"));
+        log.rewrite(devices);
+        log.open();
+
+        extraDevice = new WhitelistedDevice(LegacyWhitelist.generateDeviceId(Fixtures.device(size + 1)),
+                "Dispositivo nuevo", System.currentTimeMillis());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        log.close();
+        Fixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void legacyJsonRewrite() throws Exception {
+        LegacyWhitelist.addDeviceToWhitelist(settings, extraDevice.getId(), extraDevice.getName());
+        LegacyWhitelist.removeDeviceFromWhitelist(settings, extraDevice.getId());
+    }
+
+    @Benchmark
+    public void appendOnlyLog() throws Exception {
+        log.appendAdd(extraDevice);
+        log.appendRemove(extraDevice.getId());
+    }
+}
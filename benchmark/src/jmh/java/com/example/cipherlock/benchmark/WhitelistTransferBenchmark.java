@@ -0,0 +1,103 @@
+package com.example.cipherlock.benchmark;
+
+import com.example.cipherlock.WhitelistCodec;
+import com.example.cipherlock.WhitelistStore;
+import com.example.cipherlock.WhitelistTransfer;
+import com.example.cipherlock.WhitelistedDevice;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Importación y exportación masiva de 100k registros. El resultado es en registros por segundo.
+ * La importación incluye validación, deduplicación y la publicación única en WhitelistStore.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WhitelistTransferBenchmark {
+    private static final int RECORDS = 100000;
+
+    @Param({"CSV", "JSON_LINES"})
+    public WhitelistTransfer.Format format;
+
+    private List<WhitelistedDevice> devices;
+    private byte[] exported;
+    private WhitelistStore store;
+
+    @Setup
+    public void setUp() throws Exception {
+        devices = Fixtures.provisioningList(RECORDS);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+        WhitelistTransfer.write(writer, format, devices);
+        exported = bytes.toByteArray();
+        store = new WhitelistStore(new ArrayList<WhitelistedDevice>());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public long importAndSwap() throws IOException {
+        final List<WhitelistedDevice> imported = new ArrayList<>();
+        WhitelistTransfer.read(
+                new InputStreamReader(new ByteArrayInputStream(exported), StandardCharsets.UTF_8),
+                format, new HashSet<String>(), 1700000000000L,
+                new WhitelistCodec.DeviceSink() {
+                    @Override
+                    public void accept(WhitelistedDevice device) {
+                        imported.add(device);
+                    }
+                });
+        store.replaceAll(imported);
+        return store.getVersion();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public int export() throws IOException {
+        // Sin acumular la salida: solo se mide el formateo en streaming
+        return WhitelistTransfer.write(new DiscardingWriter(), format, devices);
+    }
+
+    /**
+     * Writer que descarta lo escrito
+     */
+    private static final class DiscardingWriter extends Writer {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void write(int c) {
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
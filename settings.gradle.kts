@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "CipherLock"
 include(":app")
+include(":benchmark")